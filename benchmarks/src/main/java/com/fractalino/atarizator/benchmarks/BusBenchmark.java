@@ -0,0 +1,93 @@
+/*
+ *  Copyright (c) 2025/2026, fractalino
+ *
+ *  This file is part of Atarizator.
+ *  It is subject to the terms of the GNU General Public License v3.
+ *  For details, see the LICENSE file at the root of the project.
+ */
+package com.fractalino.atarizator.benchmarks;
+
+import com.fractalino.atarizator.emulate.Bus;
+import com.fractalino.atarizator.emulate.atari.Atari2600;
+import com.fractalino.atarizator.emulate.commodore.C64;
+import com.fractalino.atarizator.emulate.test.TestComputer;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Address decode cost of each machine's bus: reads and writes over a
+ * fixed pseudo-random sequence of addresses. The score is the time of one
+ * access.
+ *
+ * C64 addresses skip $D000-$D7FF, as VIC-II and SID aren't implemented.
+ *
+ * @author fractalino
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class BusBenchmark {
+
+    static final int ACCESSES = 4096;
+
+    public enum Machine {
+        TEST, ATARI2600, C64
+    }
+
+    @Param
+    public Machine machine;
+
+    private Bus bus;
+    private final int[] addresses = new int[ACCESSES];
+
+    @Setup
+    public void setup() {
+        bus = switch(machine) {
+            case TEST -> new TestComputer().getBus();
+            case ATARI2600 -> new Atari2600().getBus();
+            case C64 -> new C64().getBus();
+        };
+
+        var random = new Random(0x6502);
+        for(int i = 0; i < ACCESSES; i++) {
+            int addr;
+            do {
+                addr = random.nextInt(0x10000);
+            } while(machine == Machine.C64 && addr >= 0xD000 && addr < 0xD800);
+
+            addresses[i] = addr;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACCESSES)
+    public int read() {
+        int sum = 0;
+        for(int addr : addresses) sum += bus.read(addr);
+
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACCESSES)
+    public void write() {
+        for(int addr : addresses) bus.write(addr, addr);
+    }
+}
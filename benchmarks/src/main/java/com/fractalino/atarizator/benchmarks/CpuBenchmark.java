@@ -0,0 +1,187 @@
+/*
+ *  Copyright (c) 2025/2026, fractalino
+ *
+ *  This file is part of Atarizator.
+ *  It is subject to the terms of the GNU General Public License v3.
+ *  For details, see the LICENSE file at the root of the project.
+ */
+package com.fractalino.atarizator.benchmarks;
+
+import com.fractalino.atarizator.emulate.MOS6502;
+import com.fractalino.atarizator.emulate.test.TestComputer;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Raw MOS6502 throughput on TestComputer, running the endless loop of
+ * {@link #workload()}. The score is emulated cycles per microsecond.
+ *
+ * The loop is straight-line code closed by a JMP: zero page, absolute
+ * indexed and indirect indexed accesses, the stack and binary ADC, EOR,
+ * ORA and LSR. It has no branches nor subroutine calls. It increments a
+ * counter every iteration, so IDLE_LOOPS never skips it. Setup runs
+ * {@link #CHECK} iterations and fails unless the CPU ends at
+ * {@link #LOOP} with the status and memory of a CPU without features.
+ *
+ * @author fractalino
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class CpuBenchmark {
+
+    static final int START = 0x0400;
+    static final int LOOP = 0x0403;
+    static final int TABLE = 0x1000;
+
+    static final int CYCLES = 100_000;
+
+    /** Iterations run by the setup check. */
+    static final int CHECK = 10_000;
+
+    static final byte[] IMAGE = workload();
+
+    /** Comma separated MOS6502.Feature names. */
+    @Param({"", "TABLE_DISPATCH", "LAZY_FLAGS", "ALU_TABLES", "RECOMPILER",
+        "FUSION", "PREDECODE", "IDLE_LOOPS"})
+    public String features;
+
+    private TestComputer computer;
+
+    @Setup
+    public void setup() {
+        computer = new TestComputer(Arrays.stream(features.split(","))
+                .map(String::trim)
+                .filter(f -> !f.isEmpty())
+                .map(MOS6502.Feature::valueOf)
+                .toArray(MOS6502.Feature[]::new));
+
+        check();
+    }
+
+    /**
+     * The 64 KB image: the code at {@link #START}, the table it reads at
+     * {@link #TABLE} and the reset vector. The loop writes $0010-$0015,
+     * the stack and $0300-$05FF.
+     * 
+     * @return 
+     */
+    static byte[] workload() {
+        int[] code = {
+            0xD8,               //       CLD
+            0xA2, 0x00,         //       LDX #$00
+            0xE6, 0x10,         // LOOP: INC $10
+            0xA5, 0x10,         //       LDA $10
+            0xAA,               //       TAX
+            0xBD, 0x00, 0x10,   //       LDA $1000,X
+            0x18,               //       CLC
+            0x69, 0x37,         //       ADC #$37
+            0x9D, 0x00, 0x03,   //       STA $0300,X
+            0x45, 0x11,         //       EOR $11
+            0x85, 0x11,         //       STA $11
+            0x4A,               //       LSR A
+            0x85, 0x12,         //       STA $12
+            0xA8,               //       TAY
+            0xB9, 0x00, 0x10,   //       LDA $1000,Y
+            0x48,               //       PHA
+            0xE8,               //       INX
+            0x8A,               //       TXA
+            0x65, 0x11,         //       ADC $11
+            0x91, 0x14,         //       STA ($14),Y
+            0x68,               //       PLA
+            0x05, 0x12,         //       ORA $12
+            0x99, 0x00, 0x03,   //       STA $0300,Y
+            0x4C, 0x03, 0x04    //       JMP LOOP
+        };
+
+        var image = new byte[0x10000];
+        for(int i = 0; i < code.length; i++) image[START + i] = (byte) code[i];
+        for(int i = 0; i < 0x100; i++) image[TABLE + i] = (byte) (i * 73 + 41);
+
+        // STA ($14),Y writes $0500-$05FF
+        image[0x15] = 0x05;
+        image[0xFFFC] = (byte) START;
+        image[0xFFFD] = (byte) (START >>> 8);
+
+        return image;
+    }
+
+    private static void load(TestComputer computer) {
+        computer.loadROM(IMAGE);
+        computer.getCPU().reset();
+    }
+
+    /**
+     * Steps computer at least once, until its PC is pc.
+     *
+     * @return the cycles run
+     */
+    private static long stepTo(TestComputer computer, int pc) {
+        long start = computer.getCPU().getCycles();
+        do {
+            computer.step();
+        } while(computer.getCPU().getProgramCounter() != pc);
+
+        return computer.getCPU().getCycles() - start;
+    }
+
+    /**
+     * Runs {@link #CHECK} iterations of the loop, here and on a CPU 
+     * without features.
+     *
+     * @throws IllegalStateException unless both end at {@link #LOOP} with
+     *         the same status and memory
+     */
+    private void check() {
+        var reference = new TestComputer();
+        load(reference);
+
+        // every iteration takes the same cycles: no branch, no page cross
+        long budget = stepTo(reference, LOOP)
+                + CHECK * stepTo(reference, LOOP);
+
+        load(reference);
+        reference.runCycles(budget);
+        load(computer);
+        computer.runCycles(budget);
+
+        var cpu = computer.getCPU();
+        var expected = new byte[0x0600];
+        var memory = new byte[0x0600];
+        reference.getBus().peekRange(0, expected, 0, expected.length);
+        computer.getBus().peekRange(0, memory, 0, memory.length);
+
+        if(cpu.getProgramCounter() != LOOP 
+                || cpu.getStatus() != reference.getCPU().getStatus()
+                || !Arrays.equals(memory, expected)) {
+            throw new IllegalStateException(String.format(
+                    "The workload ran differently with %s: at $%04X after "
+                    + "%d cycles, expected $%04X", 
+                    features.isEmpty() ? "no features" : features,
+                    cpu.getProgramCounter(), budget, LOOP));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CYCLES)
+    public long run() {
+        return computer.runCycles(CYCLES);
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ *  Copyright (c) 2025/2026, fractalino
+ *
+ *  This file is part of Atarizator.
+ *  It is subject to the terms of the GNU General Public License v3.
+ *  For details, see the LICENSE file at the root of the project.
+ */
+package com.fractalino.atarizator.benchmarks;
+
+import com.fractalino.atarizator.emulate.Memory;
+import com.fractalino.atarizator.emulate.Memory8;
+import com.fractalino.atarizator.emulate.MemoryWriteListener;
+import com.fractalino.atarizator.emulate.SegmentMemory8;
+
+import java.lang.foreign.MemorySegment;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Memory reads and writes over its whole capacity, on the heap (Memory8)
+ * or off-heap (SegmentMemory8), with a number of
+ * registered MemoryWriteListeners, either on every address or on a single
+ * byte, like a watchpoint. The score is the time of one access, or of 
+ * one byte of a bulk load.
+ *
+ * @author fractalino
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class MemoryBenchmark {
+
+    static final int CAPACITY = 0x10000;
+
+    public enum Kind {
+        HEAP, SEGMENT
+    }
+    
+    @Param
+    public Kind kind;
+    
+    @Param({"0", "1", "4"})
+    public int listeners;
+    
+    @Param({"false", "true"})
+    public boolean watchpoint;
+
+    private Memory mem;
+    private final byte[] image = new byte[CAPACITY];
+    private int written;
+
+    @Setup
+    public void setup() {
+        mem = switch(kind) {
+            case HEAP    -> new Memory8(CAPACITY);
+            case SEGMENT -> new SegmentMemory8(CAPACITY);
+        };
+
+        for(int i = 0; i < listeners; i++) {
+            if(watchpoint) mem.registerMemoryWriteListener(new Counter(), i, i + 1);
+            else mem.registerMemoryWriteListener(new Counter());
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if(mem instanceof SegmentMemory8 seg) seg.close();
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(CAPACITY)
+    public int read() {
+        int sum = 0;
+        for(int addr = 0; addr < CAPACITY; addr++) sum += mem.read(addr);
+
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CAPACITY)
+    public void write() {
+        int v = written++;
+        for(int addr = 0; addr < CAPACITY; addr++) mem.write(addr, v + addr);
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(CAPACITY)
+    public void load() {
+        mem.load(0, image);
+    }
+
+    /** A listener doing the least a real one does. */
+    private static final class Counter implements MemoryWriteListener {
+        int writes;
+
+        @Override
+        public void onMemoryWrite(int addr, int v) {
+            writes++;
+        }
+
+        @Override
+        public void onMemoryLoad(int addr, MemorySegment data) {
+            writes += (int) data.byteSize();
+        }
+    }
+}
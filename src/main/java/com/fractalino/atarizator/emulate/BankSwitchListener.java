@@ -0,0 +1,28 @@
+/*
+ *  Copyright (c) 2025/2026, fractalino
+ * 
+ *  This file is part of Atarizator.
+ *  It is subject to the terms of the GNU General Public License v3.
+ *  For details, see the LICENSE file at the root of the project.
+ */
+package com.fractalino.atarizator.emulate;
+
+/**
+ * Notified when a bus changes which memories are mapped where.
+ * 
+ * @author fractalino
+ */
+public interface BankSwitchListener {
+    
+    public void onBankSwitch();
+    
+    /**
+     * Notified when only the mapping of length bytes from addr changed.
+     * 
+     * @param addr
+     * @param length 
+     */
+    public default void onBankSwitch(int addr, int length) {
+        onBankSwitch();
+    }
+}
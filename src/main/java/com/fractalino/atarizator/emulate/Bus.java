@@ -7,6 +7,8 @@
  */
 package com.fractalino.atarizator.emulate;
 
+import java.util.function.LongSupplier;
+
 /**
  *
  * @author fractalino
@@ -17,6 +19,49 @@ public interface Bus {
     
     public Memory.MemoryRecord[] enumMemory();
     
+    /**
+     * The value read at addr, without side effects on devices, for 
+     * debuggers and tools. Buses with such devices must override it.
+     * 
+     * @param addr
+     * @return 
+     * @see Device#peek(int) 
+     */
+    public default int peek(int addr) {
+        return read(addr);
+    }
+    
+    /**
+     * {@link #peek(int)} of length addresses from addr into dst.
+     * 
+     * @param addr
+     * @param dst
+     * @param offset where to start in dst
+     * @param length 
+     */
+    public default void peekRange(int addr, byte[] dst, int offset, int length) {
+        for(int i = 0; i < length; i++) dst[offset + i] = (byte) peek(addr + i);
+    }
+    
+    /**
+     * Gives the bus the cycle counter of the CPU, to {@link Device#sync(long)}
+     * devices that keep time to the cycle of an access before it. Buses 
+     * without such devices ignore it.
+     * 
+     * @param clock 
+     */
+    public default void setClock(LongSupplier clock) {
+    }
+    
+    /**
+     * Gives the scheduler of the machine to the devices that have events.
+     * 
+     * @param scheduler 
+     * @see Device#setScheduler(Scheduler) 
+     */
+    public default void setScheduler(Scheduler scheduler) {
+    }
+    
     public default void registerMemoryWriteListener(MemoryWriteListener[] listeners) {
         var recs = enumMemory();
         
@@ -33,6 +78,67 @@ public interface Bus {
         }
     }
     
+    /**
+     * Returns the memory currently mapped at addr, or null if addr is 
+     * decoded to a device register or nothing at all.
+     * Code caches use it to map writes on a memory back to bus addresses,
+     * so it must follow banking.
+     * 
+     * @param addr
+     * @return 
+     */
+    public default Memory memoryAt(int addr) {
+        return null;
+    }
+    
+    /**
+     * Offset of addr inside {@link #memoryAt(int)}.
+     * 
+     * @param addr
+     * @return 
+     */
+    public default int memoryOffset(int addr) {
+        return addr;
+    }
+    
+    /**
+     * Whether addr is currently decoded to a ROM, whose content only 
+     * changes on a bank switch or on a write to its Memory.
+     * 
+     * @param addr
+     * @return 
+     */
+    public default boolean isROM(int addr) {
+        return false;
+    }
+    
+    /**
+     * Whether a read of addr may return a different value without a write 
+     * from the CPU or an event on the scheduler, as a device register 
+     * following the beam does. Idle loops that read such addresses are not 
+     * skipped. By default, everything that isn't memory.
+     * 
+     * @param addr
+     * @return 
+     * @see MOS6502.Feature#IDLE_LOOPS
+     */
+    public default boolean isVolatile(int addr) {
+        return memoryAt(addr) == null;
+    }
+    
+    /**
+     * Buses that switch banks must notify bsl each time 
+     * {@link #memoryAt(int)} or {@link #isROM(int)} change, of the range 
+     * that changed if they know it.
+     * 
+     * @param bsl 
+     */
+    public default void registerBankSwitchListener(BankSwitchListener bsl) {
+    }
+    
+    public default void unregisterBankSwitchListener(BankSwitchListener bsl) {
+    }
+    
     public default int loadWord(int addr) {
         int l = read(addr);
         int h = read(addr + 1);
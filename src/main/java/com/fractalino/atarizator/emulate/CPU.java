@@ -7,6 +7,9 @@
  */
 package com.fractalino.atarizator.emulate;
 
+import java.io.IOException;
+import java.nio.file.Path;
+
 /**
  *
  * @author fractalino
@@ -16,4 +19,32 @@ public interface CPU {
     public int currentOpcode();
     public int getProgramCounter();
     
+    /**
+     * @return the cycles run since the CPU was built, the time base of 
+     *         the devices
+     */
+    public long getCycles();
+    
+    /**
+     * Ends the run in progress after the current instruction, for devices 
+     * that bring an event forward while the CPU runs to the next one. 
+     * CPUs that only step have nothing to do.
+     */
+    public default void stopRun() {
+    }
+    
+    /**
+     * Translates the code reachable in rom, which must be loaded on the 
+     * bus, ahead of time, through the on-disk cache in cacheDir.
+     * 
+     * @param rom
+     * @param cacheDir
+     * @return the number of translated blocks installed, 0 for CPUs that 
+     *         don't translate code
+     * @throws IOException if the cache can't be written
+     */
+    public default int compileAOT(byte[] rom, Path cacheDir) throws IOException {
+        return 0;
+    }
+    
 }
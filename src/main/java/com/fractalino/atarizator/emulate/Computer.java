@@ -7,17 +7,40 @@
  */
 package com.fractalino.atarizator.emulate;
 
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 /**
  *
  * @author fractalino
  */
 public abstract class Computer<B extends Bus, C extends CPU> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(Computer.class);
+    
     protected final B bus;
     protected final C cpu;
     
+    /** Elapsed master cycles, counted in CPU cycles. */
+    protected long masterCycle = 0;
+    
+    /** Device events, by master cycle. */
+    protected final Scheduler scheduler = new Scheduler();
+    
+    /** Where ahead of time translations of ROMs are kept, null if none. */
+    private Path aotCache = null;
+    
     public Computer(B bus, C cpu) {
         this.bus = bus;
         this.cpu = cpu;
+        
+        bus.setClock(cpu::getCycles);
+        bus.setScheduler(scheduler);
+        
+        // devices may bring an event forward while the CPU runs to the next
+        scheduler.setOnEarlier(cpu::stopRun);
     }
     
     public B getBus() {
@@ -28,6 +51,79 @@ public abstract class Computer<B extends Bus, C extends CPU> {
         return cpu;
     }
     
+    public long getMasterCycle() {
+        return masterCycle;
+    }
+    
+    public Scheduler getScheduler() {
+        return scheduler;
+    }
+    
+    public Path getAOTCache() {
+        return aotCache;
+    }
+    
+    /**
+     * Enables ahead of time translation of the ROMs loaded from now on, for
+     * a CPU created with {@link MOS6502.Feature#RECOMPILER}. Only machines 
+     * whose {@link #loadROM(byte[])} maps the image call 
+     * {@link #compileROM(byte[])}: the 2600 does, the C64 loads no ROM yet.
+     * 
+     * @param aotCache the cache directory, null to disable
+     */
+    public void setAOTCache(Path aotCache) {
+        this.aotCache = aotCache;
+    }
+    
     public abstract void step();
     public abstract void loadROM(byte[] rom);
+    
+    /**
+     * Translates rom, once loaded, ahead of time if enabled. Failures only 
+     * cost speed: the code is interpreted instead.
+     * 
+     * @param rom
+     */
+    protected void compileROM(byte[] rom) {
+        if(aotCache == null) return;
+        
+        try {
+            cpu.compileAOT(rom, aotCache);
+        } catch(IOException | IllegalStateException ex) {
+            LOGGER.warn("No ahead of time translation: {}", ex.toString());
+        }
+    }
+    
+    /**
+     * Runs the machine for at least budget master cycles, or until it 
+     * stops advancing. Machines override this to run the CPU in batches
+     * between device deadlines instead of one step at a time.
+     * 
+     * @param budget
+     * @return the master cycles actually run
+     */
+    public long runCycles(long budget) {
+        long start = masterCycle;
+        
+        while(masterCycle - start < budget) {
+            long before = masterCycle;
+            
+            step();
+            
+            if(masterCycle == before) break;
+        }
+        
+        return masterCycle - start;
+    }
+    
+    /**
+     * Runs the machine until the master clock reaches cycle.
+     * 
+     * @param cycle
+     * @return the master cycles actually run
+     * @see #runCycles(long) 
+     */
+    public long runUntil(long cycle) {
+        return runCycles(cycle - masterCycle);
+    }
 }
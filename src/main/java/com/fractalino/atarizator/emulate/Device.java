@@ -17,6 +17,52 @@ public interface Device {
     public void write(int addr, int v);
     public void tick();
     
+    /**
+     * The value read at addr, without the side effects of a read, like 
+     * clearing flags. Devices whose reads have side effects must override 
+     * it.
+     * 
+     * @param addr
+     * @return 
+     */
+    public default int peek(int addr) {
+        return read(addr);
+    }
+    
+    /**
+     * {@link #peek(int)} of length addresses from addr into dst.
+     * 
+     * @param addr
+     * @param dst
+     * @param offset where to start in dst
+     * @param length 
+     */
+    public default void peekRange(int addr, byte[] dst, int offset, int length) {
+        for(int i = 0; i < length; i++) dst[offset + i] = (byte) peek(addr + i);
+    }
+    
+    /**
+     * Brings the device up to cycle from the cycle it was last synchronized
+     * to, in one computation instead of tick by tick. Buses call it before
+     * an access to the registers of the device, and the device itself when
+     * one of its events fires; cycle, in CPU cycles, never goes back. 
+     * Devices that don't keep time ignore it.
+     * 
+     * @param cycle
+     * @see Bus#setClock(java.util.function.LongSupplier) 
+     */
+    public default void sync(long cycle) {
+    }
+    
+    /**
+     * Gives the device the scheduler of its machine, to register the events
+     * it must not miss, like an interrupt, instead of being polled.
+     * 
+     * @param scheduler 
+     */
+    public default void setScheduler(Scheduler scheduler) {
+    }
+    
     public default void tick(int cycles) { 
         for(int i = 0; i < cycles; i++) tick();
     }
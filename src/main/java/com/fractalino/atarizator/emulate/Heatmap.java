@@ -0,0 +1,201 @@
+/*
+ *  Copyright (c) 2025/2026, fractalino
+ *
+ *  This file is part of Atarizator.
+ *  It is subject to the terms of the GNU General Public License v3.
+ *  For details, see the LICENSE file at the root of the project.
+ */
+package com.fractalino.atarizator.emulate;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Read, write and execute counters for every address of the 64 KB space.
+ *
+ * A CPU given a heatmap counts each opcode fetch as an execution of its
+ * address, and each other bus access, operand fetches included, as a read
+ * or a write. Buses and devices may count their own accesses too.
+ * Counters are unsigned 32-bit and wrap around. Like {@link TraceBuffer},
+ * it is written by the emulation thread only: save or report it while the
+ * CPU is not running.
+ *
+ * @author fractalino
+ */
+public final class Heatmap {
+
+    /** First bytes of a heatmap file. */
+    public static final int MAGIC = 0x3635484D; // "65HM"
+    public static final int VERSION = 1;
+
+    public static final int SIZE = 0x10000;
+
+    public enum Access {
+        READ, WRITE, EXECUTE
+    }
+
+    private final int[] reads = new int[SIZE];
+    private final int[] writes = new int[SIZE];
+    private final int[] executes = new int[SIZE];
+
+    public void countRead(int addr) {
+        reads[addr & 0xFFFF]++;
+    }
+
+    public void countWrite(int addr) {
+        writes[addr & 0xFFFF]++;
+    }
+
+    public void countExecute(int addr) {
+        executes[addr & 0xFFFF]++;
+    }
+
+    /**
+     * @param access
+     * @param addr
+     * @return the number of accesses to addr
+     */
+    public long get(Access access, int addr) {
+        return Integer.toUnsignedLong(counters(access)[addr & 0xFFFF]);
+    }
+
+    /**
+     * @param access
+     * @return the number of accesses to all addresses
+     */
+    public long total(Access access) {
+        long total = 0;
+        for(int c : counters(access)) total += Integer.toUnsignedLong(c);
+
+        return total;
+    }
+
+    /**
+     * @param access
+     * @param n
+     * @return up to n accessed addresses, the most accessed first
+     */
+    public int[] top(Access access, int n) {
+        int[] c = counters(access);
+
+        return IntStream.range(0, SIZE)
+                .filter(addr -> c[addr] != 0)
+                .boxed()
+                .sorted((a, b) -> Integer.compareUnsigned(c[b], c[a]))
+                .limit(n)
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    public void clear() {
+        Arrays.fill(reads, 0);
+        Arrays.fill(writes, 0);
+        Arrays.fill(executes, 0);
+    }
+
+    /**
+     * The n most accessed addresses and 256-byte pages of each kind, with
+     * their share of all accesses of that kind.
+     *
+     * @param n
+     * @return
+     */
+    public String report(int n) {
+        var sb = new StringBuilder();
+
+        for(var access : Access.values()) {
+            long total = total(access);
+            sb.append(String.format("%s: %d%n", access, total));
+            if(total == 0) continue;
+
+            sb.append(String.format("  %-8s %12s %7s%n", "Address", "Count", "Share"));
+            for(int addr : top(access, n)) {
+                long count = get(access, addr);
+                sb.append(String.format("  $%04X    %12d %6.2f%%%n",
+                        addr, count, 100.0 * count / total));
+            }
+
+            long[] pages = new long[SIZE >>> 8];
+            for(int addr = 0; addr < SIZE; addr++) {
+                pages[addr >>> 8] += get(access, addr);
+            }
+
+            sb.append(String.format("  %-8s %12s %7s%n", "Page", "Count", "Share"));
+            IntStream.range(0, pages.length)
+                    .filter(p -> pages[p] != 0)
+                    .boxed()
+                    .sorted((a, b) -> Long.compare(pages[b], pages[a]))
+                    .limit(n)
+                    .forEach(p -> sb.append(String.format(
+                            "  $%02Xxx    %12d %6.2f%%%n",
+                            p, pages[p], 100.0 * pages[p] / total)));
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Writes the counters to file.
+     *
+     * The format is big-endian: the int {@link #MAGIC}, the int
+     * {@link #VERSION}, then {@link #SIZE} ints of read, write and execute
+     * counts, in this order, indexed by address.
+     *
+     * @param file
+     * @throws IOException
+     */
+    public void save(Path file) throws IOException {
+        try(var out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(file), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            for(var c : new int[][] {reads, writes, executes}) {
+                for(int v : c) out.writeInt(v);
+            }
+        }
+    }
+
+    /**
+     * Reads a file written by {@link #save(Path)}.
+     *
+     * @param file
+     * @return
+     * @throws IOException if file can't be read or isn't a heatmap
+     */
+    public static Heatmap load(Path file) throws IOException {
+        try(var in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(file), 1 << 16))) {
+            if(in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a heatmap file");
+            }
+
+            int version = in.readInt();
+            if(version != VERSION) {
+                throw new IOException("Unsupported heatmap version " + version);
+            }
+
+            var heatmap = new Heatmap();
+            for(var c : new int[][] {heatmap.reads, heatmap.writes, heatmap.executes}) {
+                for(int i = 0; i < SIZE; i++) c[i] = in.readInt();
+            }
+
+            return heatmap;
+        }
+    }
+
+    private int[] counters(Access access) {
+        return switch(access) {
+            case READ    -> reads;
+            case WRITE   -> writes;
+            case EXECUTE -> executes;
+        };
+    }
+}
@@ -7,8 +7,16 @@
  */
 package com.fractalino.atarizator.emulate;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Path;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+
+import static com.fractalino.atarizator.emulate.MOS6502.AddressingMode.*;
 
 /**
  *
@@ -37,7 +45,7 @@ public class MOS6502<B extends Bus> implements CPU{
     private int A = 0x0; // Accumulator register
     private int X = 0x0; // X register
     private int Y = 0x0; // Y register
-    private int S = 0x0; // Status register
+    private int S = 0x0; // Status register (N, V and Z may be lazy)
     private int P = 0xFF; // Stack pointer
     // 16 bits
     private int PC = 0x0;
@@ -47,27 +55,250 @@ public class MOS6502<B extends Bus> implements CPU{
     }
     // ===============
 
+    // == LAZY FLAGS ==
+    // With LAZY_FLAGS the N, Z and V bits of S are stale: they are kept 
+    // as the values they derive from and only folded into S by status().
+    private int nRes = 0x0; // N is bit 7
+    private int zRes = 0x1; // Z is set when this is 0
+    private int vRes = 0x0; // V is bit 7
+    // ================
+
+    // == IDLE LOOPS ==
+    // State of the CPU the last time a backward jump landed on loopPC.
+    // If it lands there again with the same registers, without having
+    // changed memory or read a volatile address, the loop repeats 
+    // identically until a device changes.
+    private int loopPC = -1;
+    private int loopA, loopX, loopY, loopS, loopP;
+    private long loopCycles = 0;
+    private long loopChanges = 0;
+    // writes that changed memory or hit a device, and volatile reads
+    private long changes = 0;
+    private long idleCycles = 0;
+    // ================
+
     private boolean jammed = false;
+    private boolean interrupted = false;
+    /** End of the budget of {@link #runCycles(long)}, for code caches. */
+    private long runEnd = Long.MAX_VALUE;
     private int penalty = 0;
+    private long cycles = 0;
+    /**
+     * Cycles of the step already run before the instruction in progress,
+     * when a translated block or a fused chain runs several in one step.
+     */
+    private int elapsed = 0;
     private int currentOpcode = 0x0;
 
     private final B bus;
+    
+    private final boolean tableDispatch;
+    private final boolean lazyFlags;
+    private final boolean aluTables;
+    private final boolean idleLoops;
+    private final boolean fusion;
+    /** Runs of each fusion by first opcode << 2 | instructions matched. */
+    private final long[] fusionProfile;
+    private final MOS6502Recompiler recompiler;
+    private final MOS6502Predecoder predecoder;
+    
+    private TraceBuffer trace = null;
+    private boolean traceAll = false;
+    private Heatmap heatmap = null;
+    /** Every access must go through the interpreter. */
+    private boolean instrumented = false;
+
+    /**
+     * Optional execution strategies, selected when the CPU is built.
+     * Every feature must behave exactly like the plain interpreter.
+     */
+    public enum Feature {
+        /**
+         * Dispatch opcodes through a precomputed 256-entry table of 
+         * addressing mode + operation handlers instead of the 
+         * {@link #exec(int)} switch.
+         */
+        TABLE_DISPATCH,
+        
+        /**
+         * Translate hot basic blocks to JVM bytecode. A step then runs a 
+         * whole translated block and returns the cycles of all of it.
+         */
+        RECOMPILER,
+        
+        /**
+         * Keep the operands of N, Z and V instead of updating S on every
+         * ALU instruction, and build S only when it is read as a whole.
+         */
+        LAZY_FLAGS,
+        
+        /**
+         * Look ADC, SBC and ARR results and flags up in precomputed tables
+         * shared by all CPUs instead of computing them.
+         */
+        ALU_TABLES,
+        
+        /**
+         * In {@link #runCycles(long)}, detect loops whose iterations 
+         * repeat the same state without changing memory or reading 
+         * {@link Bus#isVolatile(int) volatile} addresses, and jump over
+         * them to the end of the budget, as the CPU can only leave them 
+         * once a scheduled event or an interrupt intervenes.
+         */
+        IDLE_LOOPS,
+        
+        /**
+         * Dispatch through table handlers that also run the instructions 
+         * most often following theirs (see {@link MOS6502#FUSIONS}), so
+         * a step may run up to three instructions.
+         */
+        FUSION,
+        
+        /**
+         * Cache the opcode and operand of instructions run from ROM, as 
+         * told by {@link Bus#isROM(int)}, and run them from the cache 
+         * without fetching them from the bus again.
+         */
+        PREDECODE
+    }
 
-    public MOS6502(B bus) {
+    public MOS6502(B bus, Feature... features) {
         this.bus = bus;
+        
+        var fs = EnumSet.noneOf(Feature.class);
+        fs.addAll(Arrays.asList(features));
+        
+        this.tableDispatch = fs.contains(Feature.TABLE_DISPATCH);
+        this.lazyFlags = fs.contains(Feature.LAZY_FLAGS);
+        this.aluTables = fs.contains(Feature.ALU_TABLES);
+        this.idleLoops = fs.contains(Feature.IDLE_LOOPS);
+        this.fusion = fs.contains(Feature.FUSION);
+        this.fusionProfile = fusion ? new long[256 << 2] : null;
+        this.recompiler = fs.contains(Feature.RECOMPILER)
+                ? new MOS6502Recompiler(bus, MethodHandles.lookup())
+                : null;
+        this.predecoder = fs.contains(Feature.PREDECODE)
+                ? new MOS6502Predecoder(bus)
+                : null;
     }
 
     public int step() {
         if(jammed) return 0;
         
+        interrupted = false;
+        int cost = execute();
+        cycles += cost;
+        
+        return cost;
+    }
+    
+    /**
+     * Runs instructions until at least budget cycles have elapsed, the CPU
+     * jams or an interrupt is taken. The last instruction may overshoot 
+     * the budget, so callers should carry the difference over.
+     * 
+     * Devices must not change during the call: the budget should end at 
+     * the next device event, and a device that brings one forward must
+     * {@link #stopRun()}.
+     * 
+     * @param budget
+     * @return the cycles actually run
+     */
+    public long runCycles(long budget) {
+        final long start = cycles;
+        final long end = start + budget;
+        
+        interrupted = false;
+        runEnd = end;
+        loopPC = -1;
+        while(cycles < end && !jammed && !interrupted) {
+            int pc = PC;
+            cycles += execute();
+            
+            if(idleLoops && PC <= pc && heatmap == null && !interrupted) {
+                idle(end);
+            }
+        }
+        runEnd = Long.MAX_VALUE;
+        
+        return cycles - start;
+    }
+    
+    /**
+     * Called after a backward jump. If the last one landed at the same PC
+     * with the same state and nothing was written nor read from a volatile
+     * address since, every following iteration will be the same: skip as 
+     * many as fit before end.
+     */
+    private void idle(long end) {
+        int s = status();
+        
+        if(PC == loopPC && changes == loopChanges
+                && A == loopA && X == loopX && Y == loopY
+                && s == loopS && P == loopP) {
+            long period = cycles - loopCycles;
+            long skip = period > 0 ? (end - cycles - 1) / period : 0;
+            
+            if(skip > 0) {
+                cycles += skip * period;
+                idleCycles += skip * period;
+            }
+        }
+        
+        loopPC = PC;
+        loopA = A;
+        loopX = X;
+        loopY = Y;
+        loopS = s;
+        loopP = P;
+        loopCycles = cycles;
+        loopChanges = changes;
+    }
+    
+    /**
+     * Runs until the cycle counter reaches cycle, like 
+     * {@link #runCycles(long)}.
+     * 
+     * @param cycle
+     * @return the cycles actually run
+     */
+    public long runUntil(long cycle) {
+        return runCycles(cycle - cycles);
+    }
+    
+    private int execute() {
+        if(recompiler != null && !instrumented) {
+            // near the end of the run, instructions are interpreted one at
+            // a time, so that the run ends after the same one
+            var block = recompiler.lookup(PC);
+            if(block != null && cycles + block.maxCycles <= runEnd) {
+                int cost = block.run(this);
+                elapsed = 0;
+                
+                return cost;
+            }
+        }
+        
         penalty = 0;
         
-        currentOpcode = next();
-        exec(currentOpcode);
-
-        int cost = CYCLES[currentOpcode];
+        if(predecoder != null && !instrumented && (PC & ~0xFFFF) == 0) {
+            int e = predecoder.lookup(PC);
+            if(e != MOS6502Predecoder.NOT_ROM) {
+                currentOpcode = e & 0xFF;
+                DecodedHandlers.HANDLERS[currentOpcode].exec(this, (e >>> 8) & 0xFFFF);
+                
+                return CYCLES[currentOpcode] + penalty;
+            }
+        }
+        
+        currentOpcode = fetch();
+        if(traceAll) record();
+        
+        if(fusion && !instrumented) FusedHandlers.HANDLERS[currentOpcode].exec(this);
+        else if(tableDispatch) TableHandlers.HANDLERS[currentOpcode].exec(this);
+        else exec(currentOpcode);
 
-        return cost + penalty;
+        return CYCLES[currentOpcode] + penalty;
     }
 
     public void exec(int op) {
@@ -163,7 +394,7 @@ public class MOS6502<B extends Bus> implements CPU{
             case 0x8E -> STA(nextWord());
 
             case 0x90 -> BCC(next());
-            case 0x91 -> STA((bus.loadWord(next()) + Y) & 0xFFFF);
+            case 0x91 -> STA((loadWord(next()) + Y) & 0xFFFF);
             case 0x94 -> STY(zpgx(next()));
             case 0x95 -> STA(zpgx(next()));
             case 0x96 -> STX(zpgy(next()));
@@ -334,13 +565,13 @@ public class MOS6502<B extends Bus> implements CPU{
     }
 
     private void LSR(int addr) {
-        int M = bus.read(addr);
+        int M = read(addr);
         int lsb = M & 0x1;
         M >>>= 1;
         M &= 0xFF;
         uaf(M);
         sf(C, lsb == 0x1);
-        bus.write(addr, M);
+        write(addr, M);
     }
 
     private void LSR_A() {
@@ -352,12 +583,12 @@ public class MOS6502<B extends Bus> implements CPU{
     }
 
     private void ROL(int addr) {
-        int M = bus.read(addr);
+        int M = read(addr);
         M <<= 1;
         M |= S & C;
         uaf(M);
         sf(C, (M & CC) == CC);
-        bus.write(addr, M);
+        write(addr, M);
     }
 
     private void ROL_A() {
@@ -368,13 +599,13 @@ public class MOS6502<B extends Bus> implements CPU{
     }
 
     private void ROR(int addr) {
-        int M = bus.read(addr);
+        int M = read(addr);
         int lsb = M & 0x1;
         M >>>= 1;
         M |= (S & C) << 7;
         uaf(M);
         sf(C, lsb == 1);
-        bus.write(addr, M);
+        write(addr, M);
     }
 
     private void ROR_A() {
@@ -386,22 +617,30 @@ public class MOS6502<B extends Bus> implements CPU{
     }
 
     private void BIT(int addr) {
-        final int M = bus.read(addr);
+        final int M = read(addr);
+        
+        if(lazyFlags) {
+            nRes = M;
+            vRes = M << 1;
+            zRes = A & M;
+            return;
+        }
+        
         sf(N, (M & 0x80) == 0x80);
         sf(V, (M & 0x40) == 0x40);
         sf(Z, (A & M) == 0x0);
     }
 
     private void STA(int addr) {
-        bus.write(addr, A);
+        write(addr, A);
     }
 
     private void STX(int addr) {
-        bus.write(addr, X);
+        write(addr, X);
     }
 
     private void STY(int addr) {
-        bus.write(addr, Y);
+        write(addr, Y);
     }
 
     private void TXS() {
@@ -442,9 +681,9 @@ public class MOS6502<B extends Bus> implements CPU{
     }
 
     private void DEC(int addr) {
-        int v = bus.read(addr) - 1;
+        int v = read(addr) - 1;
         uaf(v);
-        bus.write(addr, v);
+        write(addr, v);
     }
 
     private void INY() {
@@ -456,24 +695,24 @@ public class MOS6502<B extends Bus> implements CPU{
     }
 
     private void INC(int addr) {
-        int v = bus.read(addr) + 1;
+        int v = read(addr) + 1;
         uaf(v);
         v &= 0xFF;
-        bus.write(addr, v);
+        write(addr, v);
     }
 
     private void LDY(int addr) {
-        Y = bus.read(addr);
+        Y = read(addr);
         uaf(Y);
     }
 
     private void LDX(int addr) {
-        X = bus.read(addr);
+        X = read(addr);
         uaf(X);
     }
 
     private void LDA(int addr) {
-        A = bus.read(addr);
+        A = read(addr);
         uaf(A);
     }
 
@@ -504,10 +743,7 @@ public class MOS6502<B extends Bus> implements CPU{
     }
 
     private void RTI() {
-        S = spull();
-
-        S |= 0x20;
-        S &= ~B;
+        setStatus((spull() | 0x20) & ~B);
 
         int low = spull();
         int high = spull();
@@ -516,27 +752,27 @@ public class MOS6502<B extends Bus> implements CPU{
     }
 
     private void BVC(int r) {
-        branch((S & V) == V, rel(r));
+        branch(v(), rel(r));
     }
 
     private void BVS(int r) {
-        branch((S & V) == 0x0, rel(r));
+        branch(!v(), rel(r));
     }
 
     private void BMI(int r) {
-        branch((S & N) == 0x0, rel(r));
+        branch(!n(), rel(r));
     }
 
     private void BNE(int r) {
-        branch((S & Z) == Z, rel(r));
+        branch(z(), rel(r));
     }
 
     private void BPL(int r) {
-        branch((S & N) == N, rel(r));
+        branch(n(), rel(r));
     }
 
     private void BEQ(int r) {
-        branch((S & Z) == 0x0, rel(r));
+        branch(!z(), rel(r));
     }
 
     private void BCC(int r) {
@@ -556,7 +792,8 @@ public class MOS6502<B extends Bus> implements CPU{
     }
 
     private void CLV() {
-        sf(V, false);
+        if(lazyFlags) vRes = 0;
+        else sf(V, false);
     }
 
     private void CLD() {
@@ -576,25 +813,25 @@ public class MOS6502<B extends Bus> implements CPU{
     }
 
     private void CPY(int addr) {
-        int cmp = Y - bus.read(addr);
+        int cmp = Y - read(addr);
         uaf(cmp);
         sf(C, (cmp & CC) == CC);
     }
 
     private void CPX(int addr) {
-        int cmp = X - bus.read(addr);
+        int cmp = X - read(addr);
         uaf(cmp);
         sf(C, (cmp & CC) == CC);
     }
 
     private void CMP(int addr) {
-        int cmp = A - bus.read(addr);
+        int cmp = A - read(addr);
         uaf(cmp);
         sf(C, (cmp & CC) == CC);
     }
 
     private void PHP() {
-        spush(S);
+        spush(status());
     }
 
     private void PHA() {
@@ -602,7 +839,7 @@ public class MOS6502<B extends Bus> implements CPU{
     }
 
     private void PLP() {
-        S = spull();
+        setStatus(spull());
     }
 
     private void PLA() {
@@ -610,29 +847,29 @@ public class MOS6502<B extends Bus> implements CPU{
     }
 
     private void ORA(int addr) {
-        final int M = bus.read(addr);
+        final int M = read(addr);
         A |= M;
         uaf(A);
     }
 
     private void AND(int addr) {
-        final int M = bus.read(addr);
+        final int M = read(addr);
         A &= M;
         uaf(A);
     }
 
     private void EOR(int addr) {
-        final int M = bus.read(addr);
+        final int M = read(addr);
         A ^= M;
         uaf(A);
     }
 
     private void ASL(int addr) {
-        int M = bus.read(addr);
+        int M = read(addr);
         M <<= 1;
         uaf(M);
         sf(C, M > 0xFF);
-        bus.write(addr, M);
+        write(addr, M);
     }
 
     private void ASL_A() {
@@ -642,14 +879,27 @@ public class MOS6502<B extends Bus> implements CPU{
     }
 
     private void ADC(int addr) {
-        int M = bus.read(addr);
+        int M = read(addr);
+        
+        // A can be left out of a byte by ASL A, ROL A or TXA
+        if(aluTables && ((A | M) & ~0xFF) == 0) {
+            alu(MOS6502ALU.ADC[MOS6502ALU.index(S, A, M)]);
+            if((S & D) != 0) penalty++;
+            return;
+        }
 
         int c_in = (S & C);
         int binSum = A + M + c_in;
 
-        sf(V, ((A ^ binSum) & (M ^ binSum) & 0x80) != 0);
-        sf(N, (binSum & 0x80) != 0);
-        sf(Z, (binSum & 0xFF) == 0);
+        if(lazyFlags) {
+            vRes = (A ^ binSum) & (M ^ binSum);
+            nRes = binSum;
+            zRes = binSum & 0xFF;
+        } else {
+            sf(V, ((A ^ binSum) & (M ^ binSum) & 0x80) != 0);
+            sf(N, (binSum & 0x80) != 0);
+            sf(Z, (binSum & 0xFF) == 0);
+        }
 
         // decimal handle
         if ((S & D) != 0) {
@@ -669,14 +919,26 @@ public class MOS6502<B extends Bus> implements CPU{
     }
 
     private void SBC(int addr) {
-        int M = bus.read(addr);
+        int M = read(addr);
+        
+        if(aluTables && ((A | M) & ~0xFF) == 0) {
+            alu(MOS6502ALU.SBC[MOS6502ALU.index(S, A, M)]);
+            if((S & D) != 0) penalty++;
+            return;
+        }
         int c_in = (S & C);
 
         int binDiff = A - M - (1 - c_in);
 
-        sf(V, ((A ^ binDiff) & (A ^ M) & 0x80) != 0);
-        sf(N, (binDiff & 0x80) != 0);
-        sf(Z, (binDiff & 0xFF) == 0);
+        if(lazyFlags) {
+            vRes = (A ^ binDiff) & (A ^ M);
+            nRes = binDiff;
+            zRes = binDiff & 0xFF;
+        } else {
+            sf(V, ((A ^ binDiff) & (A ^ M) & 0x80) != 0);
+            sf(N, (binDiff & 0x80) != 0);
+            sf(Z, (binDiff & 0xFF) == 0);
+        }
 
         // decimal handle
         if ((S & D) != 0) {
@@ -719,11 +981,11 @@ public class MOS6502<B extends Bus> implements CPU{
     }
 
     private void SAX(int addr) {
-        bus.write(addr, A & X);
+        write(addr, A & X);
     }
 
     private void LAX(int addr) {
-        int value = bus.read(addr);
+        int value = read(addr);
         A = value;
         X = value;
         uaf(A);
@@ -741,7 +1003,7 @@ public class MOS6502<B extends Bus> implements CPU{
 
     private void ANC() {
         AND(imm());
-        sf(C, (S & N) != 0);
+        sf(C, n());
     }
 
     private void ALR() {
@@ -750,7 +1012,13 @@ public class MOS6502<B extends Bus> implements CPU{
     }
 
     private void ARR() {
-        int M = bus.read(imm());
+        int M = read(imm());
+        
+        if(aluTables && ((A & M) & ~0xFF) == 0) {
+            alu(MOS6502ALU.ARR[(S & C) << 8 | (A & M)]);
+            return;
+        }
+        
         A &= M;
         // ROR A
         int oldC = (S & C);
@@ -759,11 +1027,12 @@ public class MOS6502<B extends Bus> implements CPU{
         uaf(A); // N and Z
 
         sf(C, (A & 0x40) != 0);
-        sf(V, (((A >>> 6) ^ (A >>> 5)) & 1) == 1);
+        if(lazyFlags) vRes = ((A >>> 6) ^ (A >>> 5)) << 7;
+        else sf(V, (((A >>> 6) ^ (A >>> 5)) & 1) == 1);
     }
 
     private void AXS() {
-        int M = bus.read(imm());
+        int M = read(imm());
         int diff = (A & X) - M;
         sf(C, diff >= 0);
         X = diff & 0xFF;
@@ -777,34 +1046,93 @@ public class MOS6502<B extends Bus> implements CPU{
     private void NOP() {
     }
     
-    private static final Logger LOGGER = LoggerFactory.getLogger(MOS6502.class);
-    
     /** 
      * This is an helper special instruction used to log CPU data in this 
-     * emulator.
+     * emulator: it records itself in the trace buffer, if any.
      * 
      * It uses 0 cycles.
      */
     private void LOG() {
-        LOGGER.info("MOS6507[PC={}, S={}, jam={}]",
-                Integer.toHexString(PC),
-                Integer.toBinaryString(S),
-                jammed
-        );
+        if(trace != null && !traceAll) record();
+    }
+    
+    private void record() {
+        trace.record(PC - 1, currentOpcode, A, X, Y, status(), P, cycles);
+    }
+    
+    /**
+     * Sets the buffer the LOG pseudo-instruction records to. With 
+     * everyInstruction, every instruction is recorded before it executes 
+     * and the recompiler is bypassed.
+     * 
+     * @param trace the buffer, or null to stop tracing
+     * @param everyInstruction 
+     */
+    public void setTrace(TraceBuffer trace, boolean everyInstruction) {
+        this.trace = trace;
+        this.traceAll = trace != null && everyInstruction;
+        this.instrumented = traceAll || heatmap != null;
+    }
+    
+    public TraceBuffer getTrace() {
+        return trace;
+    }
+    
+    /**
+     * Sets the heatmap every bus access is counted in. While set, the 
+     * recompiler, predecoded and fused instructions are bypassed and idle 
+     * loops run in full.
+     * 
+     * @param heatmap the heatmap, or null to stop counting
+     */
+    public void setHeatmap(Heatmap heatmap) {
+        this.heatmap = heatmap;
+        this.instrumented = traceAll || heatmap != null;
+    }
+    
+    public Heatmap getHeatmap() {
+        return heatmap;
+    }
+    
+    private int read(int addr) {
+        if(heatmap != null) heatmap.countRead(addr);
+        
+        int v = bus.read(addr);
+        if(idleLoops && bus.isVolatile(addr)) changes++;
+        
+        return v;
+    }
+    
+    private int loadWord(int addr) {
+        return read(addr) | read(addr + 1) << 8;
+    }
+
+    private void write(int addr, int v) {
+        if(idleLoops) {
+            // rewriting the same value to memory can't break an idle loop
+            var mem = bus.memoryAt(addr);
+            if(mem == null || mem.read(bus.memoryOffset(addr)) != (v & 0xFF)) {
+                changes++;
+            }
+        }
+        
+        if(heatmap != null) heatmap.countWrite(addr);
+        
+        bus.write(addr, v);
     }
 
     private int xind(int ptr) {
         int zp = (ptr + X) & 0xFF;
         
-        int low = bus.read(zp);
-        int high = bus.read((zp + 1) & 0xFF);
+        int low = read(zp);
+        int high = read((zp + 1) & 0xFF);
         
         return low | (high << 8);
     }
 
     private int indy(int addr) {
-        int low = bus.read(addr);
-        int high = bus.read((addr + 1) & 0xFF);
+        int low = read(addr);
+        int high = read((addr + 1) & 0xFF);
         int base = low | (high << 8);
         int effective = (base + Y) & 0xFFFF;
         
@@ -840,6 +1168,24 @@ public class MOS6502<B extends Bus> implements CPU{
         checkPageCross(addr, effective);
         return effective;
     }
+    
+    // indexed forms the switch uses without page cross penalty
+    
+    private int absxRaw(int addr) {
+        return addr + X;
+    }
+    
+    private int absxNoPenalty(int addr) {
+        return (addr + X) & 0xFFFF;
+    }
+    
+    private int absyNoPenalty(int addr) {
+        return (addr + Y) & 0xFFFF;
+    }
+    
+    private int indyNoPenalty(int addr) {
+        return (loadWord(addr) + Y) & 0xFFFF;
+    }
 
     // page cross adds a cycle
     private void checkPageCross(int base, int eff) {
@@ -848,13 +1194,70 @@ public class MOS6502<B extends Bus> implements CPU{
     }
 
     public void setFlags(byte flags) {
-        this.S = flags;
+        setStatus(flags);
     }
 
     private void uaf(int t) {
+        if(lazyFlags) {
+            nRes = t;
+            zRes = t;
+            return;
+        }
+        
         sf(Z, t == 0);
         sf(N, (t & 0x80) == 0x80);
     }
+    
+    /**
+     * Loads A and N, V, Z, C from an entry of the MOS6502ALU tables.
+     */
+    private void alu(int entry) {
+        A = entry & 0xFF;
+        
+        int f = entry >>> 8;
+        if(lazyFlags) {
+            nRes = f;
+            zRes = (f & Z) ^ Z;
+            vRes = f << 1;
+            S = (S & ~C) | (f & C);
+        } else {
+            S = (S & ~(N | V | Z | C)) | f;
+        }
+    }
+    
+    private boolean n() {
+        return lazyFlags ? (nRes & 0x80) != 0 : (S & N) == N;
+    }
+    
+    private boolean z() {
+        return lazyFlags ? zRes == 0 : (S & Z) == Z;
+    }
+    
+    private boolean v() {
+        return lazyFlags ? (vRes & 0x80) != 0 : (S & V) == V;
+    }
+    
+    /**
+     * @return the status register, with lazy flags folded in
+     */
+    private int status() {
+        if(!lazyFlags) return S;
+        
+        return (S & ~(N | V | Z))
+                | (nRes & N)
+                | ((vRes & 0x80) >>> 1)
+                | (zRes == 0 ? Z : 0);
+    }
+    
+    private void setStatus(int s) {
+        S = s;
+        
+        if(lazyFlags) {
+            nRes = s & N;
+            vRes = (s & V) << 1;
+            zRes = (s & Z) == Z ? 0 : 1;
+        }
+    }
 
     private void sf(int flag, boolean set) {
         if (set)
@@ -864,17 +1267,27 @@ public class MOS6502<B extends Bus> implements CPU{
     }
 
     private int nextWord() {
-        final int word = bus.loadWord(PC);
+        final int word = loadWord(PC);
         PC+=2;
         return word;
     }
 
     private int next() {
-        return bus.read(PC++);
+        return read(PC++);
+    }
+    
+    private int fetch() {
+        if(heatmap != null) {
+            heatmap.countExecute(PC);
+            
+            return bus.read(PC++);
+        }
+        
+        return read(PC++);
     }
 
     private void spush(int b) {
-        bus.write(0x100 + P, b);
+        write(0x100 + P, b);
 
         P = (P - 1) & 0xFF;
     }
@@ -882,7 +1295,7 @@ public class MOS6502<B extends Bus> implements CPU{
     private int spull() {
         P = (P + 1) & 0xFF;
 
-        return bus.read(0x100 + P);
+        return read(0x100 + P);
     }
 
     private int jmpPageWrapBug(int addr) {
@@ -892,8 +1305,8 @@ public class MOS6502<B extends Bus> implements CPU{
                 ? (addr & 0xFF00) 
                 : (addr + 1);
 
-        return (bus.read(target_msb) << 8) |
-                bus.read(target_lsb);
+        return (read(target_msb) << 8) |
+                read(target_lsb);
     }
     
     private void branch(boolean nc, int offset) {
@@ -919,7 +1332,7 @@ public class MOS6502<B extends Bus> implements CPU{
         spush((PC >> 8) & 0xFF);
         spush(PC & 0xFF);
 
-        int statusToPush = S | 0x20;
+        int statusToPush = status() | 0x20;
         if (isSoftwareBreak) {
             statusToPush |= 0x10; // The B flag
         }
@@ -927,25 +1340,50 @@ public class MOS6502<B extends Bus> implements CPU{
 
         sf(I, true);
 
-        PC = bus.loadWord(vectorAddress);
+        PC = loadWord(vectorAddress);
     }
 
+    /**
+     * Takes an NMI. Like {@link #irq()}, it must be called between 
+     * instructions, and counts the 7 cycles of the sequence.
+     */
     public void nmi() {
         interrupt(false, VEC_NMI);
+        cycles += 7;
+        interrupted = true;
     }
 
     public void irq() {
         if ((S & I) == 0) {
             interrupt(false, VEC_IRQ);
+            cycles += 7;
+            interrupted = true;
         }
     }
     
+    /**
+     * Ends {@link #runCycles(long)} after the instruction in progress, or 
+     * the translated block, for devices that change during the call, like
+     * an interrupt raised by a register write.
+     */
+    @Override
+    public void stopRun() {
+        interrupted = true;
+    }
+    
+    /**
+     * @return whether the I flag masks IRQs
+     */
+    public boolean isIRQMasked() {
+        return (S & I) != 0;
+    }
+    
     public void reset() {
         P = 0xFF;
         sf(I, true);
         sf(D, false);
         // Load the Reset Vector (FFFC/FFFD)
-        PC = bus.loadWord(0xFFFC);
+        PC = loadWord(0xFFFC);
     }
     
     @Override
@@ -958,13 +1396,508 @@ public class MOS6502<B extends Bus> implements CPU{
         return PC;
     }
     
+    /**
+     * Translates the code reachable in rom, which must be loaded on the 
+     * bus, ahead of time, through the on-disk cache in cacheDir.
+     * Needs {@link Feature#RECOMPILER}.
+     * 
+     * @param rom
+     * @param cacheDir
+     * @return the number of translated blocks installed
+     * @throws IOException if the cache can't be written
+     */
+    @Override
+    public int compileAOT(byte[] rom, Path cacheDir) throws IOException {
+        if(recompiler == null) {
+            throw new IllegalStateException("AOT needs Feature.RECOMPILER");
+        }
+        
+        return MOS6502AOT.compile(recompiler, bus, rom, cacheDir);
+    }
+    
+    /**
+     * @return the status register
+     */
+    public int getStatus() {
+        return status();
+    }
+    
+    /**
+     * @return the cycles skipped over idle loops
+     * @see Feature#IDLE_LOOPS
+     */
+    public long getIdleCycles() {
+        return idleCycles;
+    }
+    
+    /**
+     * @return the cycles run since the CPU was built, up to the start of 
+     *         the instruction in progress if any
+     */
+    @Override
+    public long getCycles() {
+        return cycles + elapsed;
+    }
+    
     @Override
     public String toString() {
         return String.format("MOS6507[PC = %04x; S = %s; OP = %02x]", 
-                PC, Integer.toString(S, 2), currentOpcode);
+                PC, Integer.toString(status(), 2), currentOpcode);
+    }
+
+    // == TABLE DISPATCH ==
+    // The same instruction set as exec(int), split into an addressing mode
+    // that resolves the effective address and an operation applied to it.
+    // Quirks of the switch (unmasked or unchecked indexing on some opcodes)
+    // are kept as their own modes so every engine stays cycle-identical.
+    // Operations are named after their private method: the handlers and 
+    // translated blocks are generated from this table (see MOS6502CodeGen).
+    
+    private abstract static class Handler {
+        abstract void exec(MOS6502<?> cpu);
+    }
+    
+    enum AddressingMode {
+        IMP(0, null),
+        /** Implied form that fetches its own immediate (ANC, ALR, ARR, AXS). */
+        IMP_IMM(1, null),
+        IMM(1, null),
+        ZPG(1, null),
+        REL(1, null),
+        ABS(2, null),
+        ZPX(1, "zpgx"),
+        ZPY(1, "zpgy"),
+        ABX(2, "absx"),
+        ABY(2, "absy"),
+        XIN(1, "xind"),
+        INY(1, "indy"),
+        IND(2, "jmpPageWrapBug"),
+        ABX_RAW(2, "absxRaw"),
+        ABX_NPC(2, "absxNoPenalty"),
+        ABY_NPC(2, "absyNoPenalty"),
+        INY_NPC(1, "indyNoPenalty");
+        
+        /** Number of operand bytes following the opcode. */
+        final int operandBytes;
+        /** 
+         * Name of the int(int) helper that turns the operand into the 
+         * effective address, or null if the operand is used as is.
+         */
+        final String helper;
+        
+        private AddressingMode(int operandBytes, String helper) {
+            this.operandBytes = operandBytes;
+            this.helper = helper;
+        }
+    }
+    
+    record Instruction(String mnemonic, AddressingMode mode) {
+        
+        public int length() {
+            return 1 + mode.operandBytes;
+        }
+    }
+    
+    static final Instruction[] INSTRUCTIONS = new Instruction[256];
+    
+    private static void op(int opcode, AddressingMode mode, String mnemonic) {
+        INSTRUCTIONS[opcode] = new Instruction(mnemonic, mode);
+    }
+    
+    static {
+        for(int op = 0; op < 256; op++) {
+            boolean jam = op % 0x10 == 0x2 && op != 0xA2 && op != 0xF2;
+            op(op, AddressingMode.IMP, jam ? "JAM" : "NOP");
+        }
+        
+        op(0x00, IMP, "BRK");
+        op(0x01, XIN, "ORA");
+        op(0x05, ZPG, "ORA");
+        op(0x06, ZPG, "ASL");
+        op(0x08, IMP, "PHP");
+        op(0x09, IMM, "ORA");
+        op(0x0A, IMP, "ASL_A");
+        op(0x0D, ABS, "ORA");
+        op(0x0E, ABS, "ASL");
+
+        op(0x10, REL, "BPL");
+        op(0x11, INY, "ORA");
+        op(0x15, ZPX, "ORA");
+        op(0x16, ZPX, "ASL");
+        op(0x18, IMP, "CLC");
+        op(0x19, ABY, "ORA");
+        op(0x1D, ABX, "ORA");
+        op(0x1E, ABX_RAW, "ASL");
+
+        op(0x20, ABS, "JSR");
+        op(0x21, XIN, "AND");
+        op(0x24, ZPG, "BIT");
+        op(0x25, ZPG, "AND");
+        op(0x26, ZPG, "ROL");
+        op(0x28, IMP, "PLP");
+        op(0x29, IMM, "AND");
+        op(0x2A, IMP, "ROL_A");
+        op(0x2C, ABS, "BIT");
+        op(0x2D, ABS, "AND");
+        op(0x2E, ABS, "ROL");
+
+        op(0x30, REL, "BMI");
+        op(0x31, INY, "AND");
+        op(0x35, ZPX, "AND");
+        op(0x36, ZPX, "ROL");
+        op(0x38, IMP, "SEC");
+        op(0x39, ABY, "AND");
+        op(0x3D, ABX, "AND");
+        op(0x3E, ABX, "ROL");
+
+        op(0x40, IMP, "RTI");
+        op(0x41, XIN, "EOR");
+        op(0x45, ZPG, "EOR");
+        op(0x46, ZPG, "LSR");
+        op(0x48, IMP, "PHA");
+        op(0x49, IMM, "EOR");
+        op(0x4A, IMP, "LSR_A");
+        op(0x4C, ABS, "JMP");
+        op(0x4D, ABS, "EOR");
+        op(0x4E, ABS, "LSR");
+
+        op(0x50, REL, "BVC");
+        op(0x51, INY, "EOR");
+        op(0x55, ZPX, "EOR");
+        op(0x56, ZPX, "LSR");
+        op(0x58, IMP, "CLI");
+        op(0x59, ABY, "EOR");
+        op(0x5D, ABX, "EOR");
+        op(0x5E, ABX, "LSR");
+
+        op(0x60, IMP, "RTS");
+        op(0x61, XIN, "ADC");
+        op(0x65, ZPG, "ADC");
+        op(0x66, ZPG, "ROR");
+        op(0x68, IMP, "PLA");
+        op(0x69, IMM, "ADC");
+        op(0x6A, IMP, "ROR_A");
+        op(0x6C, IND, "JMP");
+        op(0x6D, ABS, "ADC");
+        op(0x6E, ABS, "ROR");
+
+        op(0x70, REL, "BVS");
+        op(0x71, INY, "ADC");
+        op(0x75, ZPX, "ADC");
+        op(0x76, ZPX, "ROR");
+        op(0x78, IMP, "SEI");
+        op(0x79, ABY, "ADC");
+        op(0x7D, ABX, "ADC");
+        op(0x7E, ABX_NPC, "ROR");
+
+        op(0x81, XIN, "STA");
+        op(0x84, ZPG, "STY");
+        op(0x85, ZPG, "STA");
+        op(0x86, ZPG, "STX");
+        op(0x88, IMP, "DEY");
+        op(0x8A, IMP, "TXA");
+        op(0x8C, ABS, "STY");
+        op(0x8D, ABS, "STX");
+        op(0x8E, ABS, "STA");
+
+        op(0x90, REL, "BCC");
+        op(0x91, INY_NPC, "STA");
+        op(0x94, ZPX, "STY");
+        op(0x95, ZPX, "STA");
+        op(0x96, ZPY, "STX");
+        op(0x98, IMP, "TYA");
+        op(0x99, ABY_NPC, "STA");
+        op(0x9A, IMP, "TXS");
+        op(0x9D, ABX_NPC, "STA");
+
+        op(0xA0, IMM, "LDY");
+        op(0xA1, XIN, "LDA");
+        op(0xA2, IMM, "LDX");
+        op(0xA4, ZPG, "LDY");
+        op(0xA5, ZPG, "LDA");
+        op(0xA6, ZPG, "LDX");
+        op(0xA8, IMP, "TAY");
+        op(0xA9, IMM, "LDA");
+        op(0xAA, IMP, "TAX");
+        op(0xAC, ABS, "LDY");
+        op(0xAD, ABS, "LDA");
+        op(0xAE, ABS, "LDX");
+
+        op(0xB0, REL, "BCS");
+        op(0xB1, INY, "LDA");
+        op(0xB4, ZPX, "LDY");
+        op(0xB5, ZPX, "LDA");
+        op(0xB6, ZPY, "LDX");
+        op(0xB8, IMP, "CLV");
+        op(0xB9, ABY, "LDA");
+        op(0xBA, IMP, "TSX");
+        op(0xBC, ABX, "LDY");
+        op(0xBD, ABX, "LDA");
+        op(0xBE, ABY, "LDX");
+
+        op(0xC0, IMM, "CPY");
+        op(0xC1, XIN, "CMP");
+        op(0xC4, ZPG, "CPY");
+        op(0xC5, ZPG, "CMP");
+        op(0xC6, ZPG, "DEC");
+        op(0xC8, IMP, "INY");
+        op(0xC9, IMM, "CMP");
+        op(0xCA, IMP, "DEX");
+        op(0xCC, ABS, "CPY");
+        op(0xCD, ABS, "CMP");
+        op(0xCE, ABS, "DEC");
+
+        op(0xD0, REL, "BNE");
+        op(0xD1, INY, "CMP");
+        op(0xD5, ZPX, "CMP");
+        op(0xD6, ZPX, "DEC");
+        op(0xD8, IMP, "CLD");
+        op(0xD9, ABY, "CMP");
+        op(0xDA, IMP, "TSX");
+        op(0xDD, ABX, "CMP");
+        op(0xDE, ABX_NPC, "DEC");
+
+        op(0xE0, IMM, "CPX");
+        op(0xE1, XIN, "SBC");
+        op(0xE4, ZPG, "CPX");
+        op(0xE5, ZPG, "SBC");
+        op(0xE6, ZPG, "INC");
+        op(0xE8, IMP, "INX");
+        op(0xE9, IMM, "SBC");
+        op(0xEA, IMP, "NOP");
+        op(0xEC, ABS, "CPX");
+        op(0xED, ABS, "SBC");
+        op(0xEE, ABS, "INC");
+
+        op(0xF0, REL, "BEQ");
+        op(0xF1, INY, "SBC");
+        op(0xF5, ZPX, "SBC");
+        op(0xF6, ZPX, "INC");
+        op(0xF8, IMP, "SED");
+        op(0xF9, ABY, "SBC");
+        op(0xFD, ABX, "SBC");
+        op(0xFE, ABX, "INC");
+
+        // ILLEGAL OPCODES
+        
+        // SLO
+        op(0x03, XIN, "SLO");
+        op(0x07, ZPG, "SLO");
+        op(0x0F, ABS, "SLO");
+        op(0x13, INY, "SLO");
+        op(0x17, ZPX, "SLO");
+        op(0x1B, ABY, "SLO");
+        op(0x1F, ABX, "SLO");
+
+        // RLA
+        op(0x23, XIN, "RLA");
+        op(0x27, ZPG, "RLA");
+        op(0x2F, ABS, "RLA");
+        op(0x33, INY, "RLA");
+        op(0x37, ZPX, "RLA");
+        op(0x3B, ABY, "RLA");
+        op(0x3F, ABX, "RLA");
+
+        // SRE
+        op(0x43, XIN, "SRE");
+        op(0x47, ZPG, "SRE");
+        op(0x4F, ABS, "SRE");
+        op(0x53, INY, "SRE");
+        op(0x57, ZPX, "SRE");
+        op(0x5B, ABY, "SRE");
+        op(0x5F, ABX, "SRE");
+
+        // RRA
+        op(0x63, XIN, "RRA");
+        op(0x67, ZPG, "RRA");
+        op(0x6F, ABS, "RRA");
+        op(0x73, INY, "RRA");
+        op(0x77, ZPX, "RRA");
+        op(0x7B, ABY, "RRA");
+        op(0x7F, ABX, "RRA");
+
+        // SAX
+        op(0x83, XIN, "SAX");
+        op(0x87, ZPG, "SAX");
+        op(0x8F, ABS, "SAX");
+        op(0x97, ZPY, "SAX");
+
+        // LAX
+        op(0xA3, XIN, "LAX");
+        op(0xA7, ZPG, "LAX");
+        op(0xAF, ABS, "LAX");
+        op(0xB3, INY, "LAX");
+        op(0xB7, ZPY, "LAX");
+        op(0xBF, ABY, "LAX");
+
+        // DCP
+        op(0xC3, XIN, "DCP");
+        op(0xC7, ZPG, "DCP");
+        op(0xCF, ABS, "DCP");
+        op(0xD3, INY, "DCP");
+        op(0xD7, ZPX, "DCP");
+        op(0xDB, ABY, "DCP");
+        op(0xDF, ABX, "DCP");
+
+        // ISC
+        op(0xE3, XIN, "ISC");
+        op(0xE7, ZPG, "ISC");
+        op(0xEF, ABS, "ISC");
+        op(0xF3, INY, "ISC");
+        op(0xF7, ZPX, "ISC");
+        op(0xFB, ABY, "ISC");
+        op(0xFF, ABX, "ISC");
+
+        op(0x0B, IMP_IMM, "ANC");
+        op(0x2B, IMP_IMM, "ANC");
+        op(0x4B, IMP_IMM, "ALR");
+        op(0x6B, IMP_IMM, "ARR");
+        op(0xCB, IMP_IMM, "AXS");
+        op(0xEB, IMM, "SBC");
+        
+        op(0xF2, IMP, "LOG");
+    }
+    
+    /** 
+     * Built on first use of {@link Feature#TABLE_DISPATCH} or 
+     * {@link Feature#FUSION}.
+     */
+    private static final class TableHandlers {
+        static final Handler[] HANDLERS = new Handler[256];
+        
+        static {
+            var lookup = MethodHandles.lookup();
+            var generated = new HashMap<Instruction, Handler>();
+            
+            for(int op = 0; op < 256; op++) {
+                HANDLERS[op] = generated.computeIfAbsent(INSTRUCTIONS[op], 
+                        in -> (Handler) MOS6502CodeGen.handler(
+                                lookup, Handler.class, "exec", in
+                        ));
+            }
+        }
+    }
+
+    // == PREDECODED DISPATCH ==
+    
+    private abstract static class Decoded {
+        abstract void exec(MOS6502<?> cpu, int operand);
+    }
+    
+    /** Built on first use of {@link Feature#PREDECODE}. */
+    private static final class DecodedHandlers {
+        static final Decoded[] HANDLERS = new Decoded[256];
+        
+        static {
+            var lookup = MethodHandles.lookup();
+            var generated = new HashMap<Instruction, Decoded>();
+            
+            for(int op = 0; op < 256; op++) {
+                HANDLERS[op] = generated.computeIfAbsent(INSTRUCTIONS[op], 
+                        in -> (Decoded) MOS6502CodeGen.decoded(
+                                lookup, Decoded.class, "exec", in
+                        ));
+            }
+        }
+    }
+    
+    // == FUSED DISPATCH ==
+    // Pairs and triples frequent in copy and delay loops. A fused handler 
+    // runs the first instruction, then fetches the next opcode and runs it
+    // inline if it is the expected one, or dispatches it otherwise: code
+    // modified by the first instruction is always seen, and penalties and
+    // cycles add up exactly as in separate steps.
+    
+    static final int[][] FUSIONS = {
+        {0xA5, 0x85},       // LDA zp       STA zp
+        {0xA9, 0x85},       // LDA #        STA zp
+        {0xAD, 0x8E},       // LDA abs      STA abs
+        {0xBD, 0x9D},       // LDA abs,X    STA abs,X
+        {0xB1, 0x91, 0xC8}, // LDA (zp),Y   STA (zp),Y  INY
+        {0xCA, 0xD0},       // DEX          BNE
+        {0x88, 0xD0},       // DEY          BNE
+        {0xC8, 0xD0},       // INY          BNE
+        {0xE8, 0xD0},       // INX          BNE
+        {0xC9, 0xD0},       // CMP #        BNE
+        {0xE0, 0xD0},       // CPX #        BNE
+        {0xC0, 0xD0},       // CPY #        BNE
+        {0xE6, 0xD0},       // INC zp       BNE
+        {0x24, 0x10}        // BIT zp       BPL
+    };
+    
+    /** Built on first use of {@link Feature#FUSION}. */
+    private static final class FusedHandlers {
+        static final Handler[] HANDLERS = TableHandlers.HANDLERS.clone();
+        
+        static {
+            var lookup = MethodHandles.lookup();
+            
+            for(int[] chain : FUSIONS) {
+                HANDLERS[chain[0]] = (Handler) MOS6502CodeGen.fused(
+                        lookup, Handler.class, "exec", chain
+                );
+            }
+        }
+    }
+    
+    private void dispatch(int op) {
+        TableHandlers.HANDLERS[op].exec(this);
+    }
+    
+    private void fused(int op, int matched, int cycles) {
+        penalty += cycles;
+        elapsed = 0;
+        fusionProfile[op << 2 | matched]++;
+    }
+    
+    /**
+     * @return a table of the fusions that ran and how often their
+     *         following instructions matched, most frequent first
+     * @see Feature#FUSION
+     */
+    public String getFusionReport() {
+        if(fusionProfile == null) return "Fusion disabled";
+        
+        var chains = Arrays.stream(FUSIONS)
+                .sorted(Comparator.comparingLong((int[] c) -> -runs(c[0])))
+                .toList();
+        
+        var sb = new StringBuilder(String.format(
+                "%-36s %12s %12s %7s%n", "Fusion", "Runs", "Fired", "Rate"
+        ));
+        for(int[] chain : chains) {
+            long runs = runs(chain[0]);
+            
+            var name = new StringBuilder();
+            for(int i = 0; i < chain.length; i++) {
+                var in = INSTRUCTIONS[chain[i]];
+                if(i > 0) name.append(", ");
+                name.append(in.mnemonic()).append(' ').append(in.mode());
+                
+                if(i == 0) continue;
+                
+                long fired = 0;
+                for(int m = i; m < chain.length; m++) {
+                    fired += fusionProfile[chain[0] << 2 | m];
+                }
+                
+                sb.append(String.format("%-36s %12d %12d %6.1f%%%n", 
+                        name, runs, fired, 
+                        runs == 0 ? 0.0 : 100.0 * fired / runs));
+            }
+        }
+        
+        return sb.toString();
+    }
+    
+    private long runs(int op) {
+        long runs = 0;
+        for(int m = 0; m < 4; m++) runs += fusionProfile[op << 2 | m];
+        
+        return runs;
     }
 
-    private static final int[] CYCLES = {
+    static final int[] CYCLES = {
             7, 6, 2, 8, 3, 3, 5, 5, 3, 2, 2, 2, 4, 4, 6, 6,
             2, 5, 2, 8, 4, 4, 6, 6, 2, 4, 2, 7, 4, 4, 7, 7,
             6, 6, 2, 8, 3, 3, 5, 5, 4, 2, 2, 2, 4, 4, 6, 6,
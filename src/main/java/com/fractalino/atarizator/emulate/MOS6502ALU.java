@@ -0,0 +1,116 @@
+/*
+ *  Copyright (c) 2025/2026, fractalino
+ *
+ *  This file is part of Atarizator.
+ *  It is subject to the terms of the GNU General Public License v3.
+ *  For details, see the LICENSE file at the root of the project.
+ */
+package com.fractalino.atarizator.emulate;
+
+/**
+ * Precomputed results of the MOS6502 adder.
+ *
+ * Every entry packs the 8-bit result in the low byte and the N, V, Z and C
+ * flags, at their status register positions, in the high byte. The tables
+ * are built once, on first use, and shared by every CPU.
+ *
+ * @author fractalino
+ */
+final class MOS6502ALU {
+
+    private static final int N = 0x80;
+    private static final int V = 0x40;
+    private static final int D = 0x08;
+    private static final int Z = 0x02;
+    private static final int C = 0x01;
+
+    /** ADC indexed by {@link #index(int, int, int)} */
+    static final char[] ADC = new char[1 << 18];
+
+    /** SBC indexed by {@link #index(int, int, int)} */
+    static final char[] SBC = new char[1 << 18];
+
+    /** ARR indexed by carry << 8 | (A & operand) */
+    static final char[] ARR = new char[1 << 9];
+
+    static {
+        for(int s = 0; s < 1 << 2; s++) {
+            int status = (s & 2) << 2 | (s & 1); // D and C
+
+            for(int a = 0; a < 0x100; a++) {
+                for(int m = 0; m < 0x100; m++) {
+                    int i = index(status, a, m);
+                    ADC[i] = adc(a, m, status);
+                    SBC[i] = sbc(a, m, status);
+                }
+            }
+        }
+
+        for(int i = 0; i < ARR.length; i++) {
+            ARR[i] = arr(i & 0xFF, i >>> 8);
+        }
+    }
+
+    private MOS6502ALU() {
+    }
+
+    /**
+     * @param s status register, only D and C are used
+     * @param a accumulator, 0 to 255
+     * @param m operand, 0 to 255
+     * @return the index of the entry for a and m in ADC and SBC
+     */
+    static int index(int s, int a, int m) {
+        return (s & D) << 14 | (s & C) << 16 | a << 8 | m;
+    }
+
+    private static char adc(int a, int m, int s) {
+        int c = s & C;
+        int sum = a + m + c;
+
+        int flags = nz(sum) | (((a ^ sum) & (m ^ sum) & 0x80) != 0 ? V : 0);
+
+        if((s & D) != 0) {
+            if((a & 0x0F) + (m & 0x0F) + c > 9) sum += 0x06;
+            if(sum > 0x9F) sum += 0x60;
+        }
+
+        if(sum > 0xFF) flags |= C;
+
+        return entry(sum, flags);
+    }
+
+    private static char sbc(int a, int m, int s) {
+        int c = s & C;
+        int diff = a - m - (1 - c);
+
+        int flags = nz(diff) | (((a ^ diff) & (a ^ m) & 0x80) != 0 ? V : 0);
+
+        if((s & D) != 0) {
+            if((a & 0x0F) - (m & 0x0F) - (1 - c) < 0) diff -= 0x06;
+            if(diff < 0) diff -= 0x60;
+        }
+
+        if(diff >= 0) flags |= C;
+
+        return entry(diff, flags);
+    }
+
+    private static char arr(int and, int c) {
+        int r = and >>> 1 | c << 7;
+
+        int flags = nz(r);
+        if((r & 0x40) != 0) flags |= C;
+        if((((r >>> 6) ^ (r >>> 5)) & 1) == 1) flags |= V;
+
+        return entry(r, flags);
+    }
+
+    private static int nz(int r) {
+        return (r & N) | ((r & 0xFF) == 0 ? Z : 0);
+    }
+
+    private static char entry(int r, int flags) {
+        return (char) (flags << 8 | (r & 0xFF));
+    }
+}
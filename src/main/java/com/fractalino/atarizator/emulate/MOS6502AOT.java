@@ -0,0 +1,242 @@
+/*
+ *  Copyright (c) 2025/2026, fractalino
+ *
+ *  This file is part of Atarizator.
+ *  It is subject to the terms of the GNU General Public License v3.
+ *  For details, see the LICENSE file at the root of the project.
+ */
+package com.fractalino.atarizator.emulate;
+
+import com.fractalino.atarizator.emulate.MOS6502.AddressingMode;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Ahead of time translation of a ROM image.
+ *
+ * Code reachable from the NMI, reset and IRQ vectors is traced statically
+ * through branches, JSR and absolute JMP; every block found is translated
+ * by the {@link MOS6502Recompiler} and installed at once. The class files
+ * are saved under a directory named after the SHA-256 of the ROM, in a file
+ * named after the bus and the emulator classes that generated them, and
+ * loaded from there next time.
+ *
+ * Indirect jumps, returns and code written to RAM are not traced: they are
+ * interpreted, and translated if hot, as usual. Installed blocks are
+ * invalidated by writes like any other.
+ *
+ * @author fractalino
+ */
+final class MOS6502AOT {
+
+    private static final int MAGIC = 0x36355843; // "65XC"
+    private static final int VERSION = 1;
+
+    private static final int MAX_BLOCKS = 4096;
+
+    private static final int[] VECTORS = {0xFFFA, 0xFFFC, 0xFFFE};
+
+    private record Compiled(int pc, byte[] code, byte[] bytes) {
+    }
+
+    private MOS6502AOT() {
+    }
+
+    /**
+     * Installs the translation of the code reachable in rom, already
+     * loaded on bus, building and saving it first if it isn't cached.
+     *
+     * @param recompiler
+     * @param bus
+     * @param rom
+     * @param dir the cache directory
+     * @return the number of blocks installed
+     * @throws IOException if the cache can't be written
+     */
+    static int compile(MOS6502Recompiler recompiler, Bus bus, byte[] rom,
+            Path dir) throws IOException {
+        var file = dir.resolve(sha256(rom)).resolve(fingerprint(bus) + ".aot");
+
+        List<Compiled> blocks = null;
+        if(Files.isReadable(file)) {
+            try {
+                blocks = load(file);
+            } catch(IOException ex) {
+                // truncated or unreadable: build it again
+            }
+        }
+
+        if(blocks == null) {
+            blocks = trace(recompiler, bus);
+            store(file, blocks);
+        }
+
+        int installed = 0;
+        for(var c : blocks) {
+            // the same ROM can still be mapped differently or patched
+            if(!matches(recompiler, bus, c)) continue;
+
+            recompiler.install(c.pc(), c.code().length, c.bytes());
+            installed++;
+        }
+
+        return installed;
+    }
+
+    private static List<Compiled> trace(MOS6502Recompiler recompiler, Bus bus) {
+        var blocks = new ArrayList<Compiled>();
+        var seen = new BitSet(0x10000);
+        var work = new ArrayDeque<Integer>();
+
+        // peeked: reading a vector or code must not switch banks
+        for(int v : VECTORS) work.push(bus.peek(v) | bus.peek(v + 1) << 8);
+
+        while(!work.isEmpty() && blocks.size() < MAX_BLOCKS) {
+            int pc = work.pop();
+            if(pc < 0 || pc > 0xFFFF || seen.get(pc)) continue;
+            seen.set(pc);
+
+            var code = recompiler.decode(pc);
+            if(code.isEmpty()) continue;
+
+            blocks.add(new Compiled(pc, peek(bus, pc, MOS6502Recompiler.length(code)),
+                    MOS6502Recompiler.assemble(code)));
+
+            var last = code.getLast();
+            int next = last.pc() + last.in().length();
+
+            if(last.in().mode() == AddressingMode.REL) {
+                // as MOS6502.branch: the target of rel() is added to PC
+                int rel = (next + (byte) last.operand()) & 0xFFFF;
+                work.push((next + (byte) rel) & 0xFFFF);
+                work.push(next);
+                continue;
+            }
+
+            switch(last.in().mnemonic()) {
+                case "JSR" -> {
+                    work.push(last.operand());
+                    work.push(next);
+                }
+                case "JMP" -> {
+                    if(last.in().mode() == AddressingMode.ABS) {
+                        work.push(last.operand());
+                    }
+                }
+                case "RTS", "RTI", "BRK", "JAM" -> {
+                }
+                default -> work.push(next);
+            }
+        }
+
+        return blocks;
+    }
+
+    private static boolean matches(MOS6502Recompiler recompiler, Bus bus,
+            Compiled c) {
+        var code = recompiler.decode(c.pc());
+        if(code.isEmpty()) return false;
+
+        int length = MOS6502Recompiler.length(code);
+
+        return length == c.code().length
+                && Arrays.equals(peek(bus, c.pc(), length), c.code());
+    }
+
+    private static byte[] peek(Bus bus, int pc, int length) {
+        var code = new byte[length];
+        for(int i = 0; i < length; i++) code[i] = (byte) bus.peek(pc + i);
+
+        return code;
+    }
+
+    private static List<Compiled> load(Path file) throws IOException {
+        try(var in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(file)))) {
+            if(in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+
+            int n = in.readInt();
+            var blocks = new ArrayList<Compiled>(n);
+            for(int i = 0; i < n; i++) {
+                int pc = in.readInt();
+                var code = in.readNBytes(in.readInt());
+                var bytes = in.readNBytes(in.readInt());
+
+                blocks.add(new Compiled(pc, code, bytes));
+            }
+
+            return blocks;
+        }
+    }
+
+    private static void store(Path file, List<Compiled> blocks) throws IOException {
+        Files.createDirectories(file.getParent());
+
+        var tmp = Files.createTempFile(file.getParent(), "aot", ".tmp");
+        try(var out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(blocks.size());
+
+            for(var c : blocks) {
+                out.writeInt(c.pc());
+                out.writeInt(c.code().length);
+                out.write(c.code());
+                out.writeInt(c.bytes().length);
+                out.write(c.bytes());
+            }
+        }
+
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String sha256(byte[] data) {
+        return HexFormat.of().formatHex(digest().digest(data));
+    }
+
+    /**
+     * Identifies the generator: generated code calls the interpreter's
+     * private methods, so it is only valid for the classes that made it.
+     */
+    private static String fingerprint(Bus bus) throws IOException {
+        var md = digest();
+        md.update(bus.getClass().getName().getBytes());
+
+        for(var c : List.of(MOS6502.class, MOS6502CodeGen.class,
+                MOS6502Recompiler.class)) {
+            try(InputStream in = c.getResourceAsStream(
+                    c.getSimpleName() + ".class")) {
+                if(in != null) md.update(in.readAllBytes());
+            }
+        }
+
+        return bus.getClass().getSimpleName() + "-"
+                + HexFormat.of().formatHex(md.digest(), 0, 8);
+    }
+
+    private static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch(NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
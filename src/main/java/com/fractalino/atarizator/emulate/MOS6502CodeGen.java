@@ -0,0 +1,363 @@
+/*
+ *  Copyright (c) 2025/2026, fractalino
+ *
+ *  This file is part of Atarizator.
+ *  It is subject to the terms of the GNU General Public License v3.
+ *  For details, see the LICENSE file at the root of the project.
+ */
+package com.fractalino.atarizator.emulate;
+
+import com.fractalino.atarizator.emulate.MOS6502.AddressingMode;
+import com.fractalino.atarizator.emulate.MOS6502.Instruction;
+
+import java.lang.classfile.ClassFile;
+import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.Label;
+import java.lang.constant.ClassDesc;
+import java.lang.constant.MethodTypeDesc;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+import java.util.function.Consumer;
+
+import static java.lang.constant.ConstantDescs.*;
+
+/**
+ * Bytecode generation for MOS6502 instruction handlers.
+ *
+ * Generated classes are hidden nestmates of MOS6502: they call the
+ * interpreter's private addressing and operation methods directly, so the
+ * JIT sees one small monomorphic method per opcode.
+ *
+ * @author fractalino
+ */
+final class MOS6502CodeGen {
+
+    static final ClassDesc CD_CPU = ClassDesc.of(MOS6502.class.getName());
+
+    static final MethodTypeDesc MTD_OP = MethodTypeDesc.of(CD_void, CD_int);
+    static final MethodTypeDesc MTD_MODE = MethodTypeDesc.of(CD_int, CD_int);
+    static final MethodTypeDesc MTD_FETCH = MethodTypeDesc.of(CD_int);
+    static final MethodTypeDesc MTD_FUSED = 
+            MethodTypeDesc.of(CD_void, CD_int, CD_int, CD_int);
+
+    private MOS6502CodeGen() {
+    }
+
+    /**
+     * Defines a subclass of base whose only method takes the CPU, fetches 
+     * the operand of in and executes it.
+     *
+     * @param lookup a full privilege lookup on MOS6502 or on a class
+     *               nested in it, see {@link #instantiate}
+     * @param base the abstract class to extend
+     * @param method the name of its abstract package-private method, 
+     *               taking a MOS6502 and returning void
+     * @param in
+     * @return an instance of the new class
+     */
+    static Object handler(MethodHandles.Lookup lookup,
+            Class<?> base, String method, Instruction in) {
+        return define(lookup, "MOS6502$" + in.mnemonic(), base, method,
+                MethodTypeDesc.of(CD_void, CD_CPU), cb -> {
+                    fetchAndExecute(cb, 1, in);
+                    cb.return_();
+                });
+    }
+
+    /**
+     * Defines a subclass of base whose only method takes the CPU and runs 
+     * the instructions of chain as long as the opcodes fetched match it.
+     * On a mismatch the fetched opcode is passed to dispatch(int). Either 
+     * way fused(first opcode, instructions matched after it, cycles of the
+     * instructions before currentOpcode) is called before returning. The
+     * instructions after the first one see the clock at their start, and 
+     * are not fetched once an interrupt was taken or the end of the budget
+     * of runCycles reached, where the interpreter would stop too.
+     *
+     * @param lookup a full privilege lookup on MOS6502 or on a class
+     *               nested in it, see {@link #instantiate}
+     * @param base the abstract class to extend
+     * @param method the name of its abstract package-private method, 
+     *               taking a MOS6502 and returning void
+     * @param chain opcodes, the first one already fetched
+     * @return an instance of the new class
+     */
+    static Object fused(MethodHandles.Lookup lookup,
+            Class<?> base, String method, int[] chain) {
+        var name = new StringBuilder("MOS6502$Fused");
+        for(int op : chain) name.append('$').append(MOS6502.INSTRUCTIONS[op].mnemonic());
+
+        return define(lookup, name.toString(), base, method,
+                MethodTypeDesc.of(CD_void, CD_CPU), cb -> {
+                    var misses = new Label[chain.length];
+                    var stops = new Label[chain.length];
+
+                    fetchAndExecute(cb, 1, MOS6502.INSTRUCTIONS[chain[0]]);
+                    int cycles = 0;
+                    for(int i = 1; i < chain.length; i++) {
+                        misses[i] = cb.newLabel();
+                        stops[i] = cb.newLabel();
+                        cycles += MOS6502.CYCLES[chain[i - 1]];
+
+                        elapsed(cb, 1, cycles);
+                        cb.aload(1).getfield(CD_CPU, "interrupted", CD_boolean)
+                                .ifne(stops[i]);
+                        cb.aload(1).getfield(CD_CPU, "cycles", CD_long)
+                                .aload(1).getfield(CD_CPU, "elapsed", CD_int)
+                                .i2l()
+                                .ladd()
+                                .aload(1).getfield(CD_CPU, "runEnd", CD_long)
+                                .lcmp()
+                                .ifge(stops[i]);
+                        cb.aload(1).aload(1)
+                                .invokevirtual(CD_CPU, "next", MTD_FETCH)
+                                .putfield(CD_CPU, "currentOpcode", CD_int)
+                                .aload(1).getfield(CD_CPU, "currentOpcode", CD_int)
+                                .loadConstant(chain[i])
+                                .if_icmpne(misses[i]);
+
+                        fetchAndExecute(cb, 1, MOS6502.INSTRUCTIONS[chain[i]]);
+                    }
+                    fused(cb, chain, chain.length - 1, chain.length - 1);
+
+                    for(int i = 1; i < chain.length; i++) {
+                        cb.labelBinding(misses[i]);
+                        cb.aload(1).aload(1)
+                                .getfield(CD_CPU, "currentOpcode", CD_int)
+                                .invokevirtual(CD_CPU, "dispatch", MTD_OP);
+                        fused(cb, chain, i - 1, i);
+                    }
+
+                    for(int i = 1; i < chain.length; i++) {
+                        cb.labelBinding(stops[i]);
+                        fused(cb, chain, i - 1, i - 1);
+                    }
+                });
+    }
+
+    /**
+     * Emits elapsed = cycles + penalty, so that devices see the clock of
+     * the next instruction of a step running several.
+     *
+     * @param cb
+     * @param cpu the local holding the CPU
+     * @param cycles the cycles of the instructions before the next one
+     */
+    static void elapsed(CodeBuilder cb, int cpu, int cycles) {
+        cb.aload(cpu)
+                .loadConstant(cycles)
+                .aload(cpu).getfield(CD_CPU, "penalty", CD_int)
+                .iadd()
+                .putfield(CD_CPU, "elapsed", CD_int);
+    }
+
+    /**
+     * Emits the call to fused(int, int, int) and the return.
+     *
+     * @param cb
+     * @param chain
+     * @param matched instructions of chain matched after the first one
+     * @param executed instructions of chain executed before currentOpcode,
+     *                 whose cycles are left to the caller
+     */
+    private static void fused(CodeBuilder cb, int[] chain,
+            int matched, int executed) {
+        int cycles = 0;
+        for(int i = 0; i < executed; i++) cycles += MOS6502.CYCLES[chain[i]];
+
+        cb.aload(1)
+                .loadConstant(chain[0])
+                .loadConstant(matched)
+                .loadConstant(cycles)
+                .invokevirtual(CD_CPU, "fused", MTD_FUSED)
+                .return_();
+    }
+
+    /**
+     * Defines a hidden nestmate of MOS6502 extending base, implementing 
+     * its abstract package-private method with body, and instantiates it.
+     *
+     * @param lookup a full privilege lookup on MOS6502 or on a class
+     *               nested in it, see {@link #instantiate}
+     * @param name simple name of the class, made unique by the JVM
+     * @param base an abstract class with a no-argument constructor
+     * @param method
+     * @param type
+     * @param body
+     * @return an instance of the new class
+     */
+    static Object define(MethodHandles.Lookup lookup, String name,
+            Class<?> base, String method, MethodTypeDesc type,
+            Consumer<CodeBuilder> body) {
+        return instantiate(lookup, build(name, base, method, type, body));
+    }
+
+    /**
+     * Builds the class file of {@link #define}, without defining it.
+     *
+     * @param name
+     * @param base
+     * @param method
+     * @param type
+     * @param body
+     * @return the class file bytes
+     */
+    static byte[] build(String name, Class<?> base, String method,
+            MethodTypeDesc type, Consumer<CodeBuilder> body) {
+        var cdBase = ClassDesc.of(base.getName());
+        var cdClass = ClassDesc.of(MOS6502.class.getPackageName(), name);
+
+        return ClassFile.of().build(cdClass, clb -> clb
+                .withFlags(ClassFile.ACC_FINAL | ClassFile.ACC_SUPER
+                        | ClassFile.ACC_SYNTHETIC)
+                .withSuperclass(cdBase)
+                .withMethodBody(INIT_NAME, MTD_void, 0, cb -> cb
+                        .aload(0)
+                        .invokespecial(cdBase, INIT_NAME, MTD_void)
+                        .return_())
+                .withMethodBody(method, type, 0, body)
+        );
+    }
+
+    /**
+     * Defines bytes as a hidden nestmate of MOS6502 and instantiates it.
+     *
+     * The class joins the nest of the lookup class: MOS6502 itself for the
+     * recompiler, or the private holder class whose static initializer
+     * builds the handlers, such as TableHandlers. The nest host of a class
+     * nested in MOS6502 is MOS6502, so either way the generated code can
+     * call its private members.
+     *
+     * @param lookup a full privilege lookup on MOS6502 or on a class
+     *               nested in it
+     * @param bytes a class file made by {@link #build}
+     * @return an instance of the new class
+     */
+    static Object instantiate(MethodHandles.Lookup lookup, byte[] bytes) {
+        try {
+            var hidden = lookup.defineHiddenClass(
+                    bytes, true, MethodHandles.Lookup.ClassOption.NESTMATE
+            );
+
+            return hidden.findConstructor(
+                    hidden.lookupClass(), MethodType.methodType(void.class)
+            ).invoke();
+        } catch(Throwable t) {
+            throw new IllegalStateException("Can't define a generated class", t);
+        }
+    }
+
+    /**
+     * Emits in as the interpreter runs it: operands are fetched at PC.
+     *
+     * @param cb
+     * @param cpu local slot of the CPU
+     * @param in
+     */
+    static void fetchAndExecute(CodeBuilder cb, int cpu, Instruction in) {
+        var mode = in.mode();
+
+        cb.aload(cpu);
+        switch(mode) {
+            case IMP, IMP_IMM -> {
+                cb.invokevirtual(CD_CPU, in.mnemonic(), MTD_void);
+                return;
+            }
+            case IMM -> cb.aload(cpu).invokevirtual(CD_CPU, "imm", MTD_FETCH);
+            default -> {
+                if(mode.helper != null) cb.aload(cpu);
+
+                cb.aload(cpu).invokevirtual(
+                        CD_CPU,
+                        mode.operandBytes == 1 ? "next" : "nextWord",
+                        MTD_FETCH
+                );
+
+                if(mode.helper != null) {
+                    cb.invokevirtual(CD_CPU, mode.helper, MTD_MODE);
+                }
+            }
+        }
+        cb.invokevirtual(CD_CPU, in.mnemonic(), MTD_OP);
+    }
+
+    /**
+     * Emits in as if it was fetched at pc with the given operand: PC is set
+     * past the instruction and the operand is a constant.
+     *
+     * @param cb
+     * @param cpu local slot of the CPU
+     * @param in
+     * @param pc
+     * @param operand
+     */
+    static void execute(CodeBuilder cb, int cpu, Instruction in,
+            int pc, int operand) {
+        // the implied forms fetch their own operand
+        int next = in.mode() == AddressingMode.IMP_IMM ? pc + 1 : pc + in.length();
+        cb.aload(cpu).loadConstant(next).putfield(CD_CPU, "PC", CD_int);
+
+        operate(cb, cpu, in, in.mode() == AddressingMode.IMM
+                ? c -> c.loadConstant(pc + 1)
+                : c -> c.loadConstant(operand));
+    }
+
+    /**
+     * Defines a subclass of base whose only method takes the CPU and the
+     * predecoded operand of in (the address of the immediate byte for 
+     * IMM), moves PC past in and executes it.
+     *
+     * @param lookup a full privilege lookup on MOS6502 or on a class
+     *               nested in it, see {@link #instantiate}
+     * @param base the abstract class to extend
+     * @param method the name of its abstract package-private method, 
+     *               taking a MOS6502 and an int and returning void
+     * @param in
+     * @return an instance of the new class
+     */
+    static Object decoded(MethodHandles.Lookup lookup,
+            Class<?> base, String method, Instruction in) {
+        int length = in.mode() == AddressingMode.IMP_IMM ? 1 : in.length();
+
+        return define(lookup, "MOS6502$Decoded$" + in.mnemonic(), base, method,
+                MethodTypeDesc.of(CD_void, CD_CPU, CD_int), cb -> {
+                    cb.aload(1).aload(1)
+                            .getfield(CD_CPU, "PC", CD_int)
+                            .loadConstant(length)
+                            .iadd()
+                            .putfield(CD_CPU, "PC", CD_int);
+
+                    operate(cb, 1, in, c -> c.iload(2));
+                    cb.return_();
+                });
+    }
+
+    /**
+     * Emits the operation of in on the operand pushed by operand, through
+     * the addressing mode helper if any.
+     */
+    private static void operate(CodeBuilder cb, int cpu, Instruction in,
+            Consumer<CodeBuilder> operand) {
+        var mode = in.mode();
+
+        cb.aload(cpu);
+        switch(mode) {
+            case IMP, IMP_IMM -> {
+                cb.invokevirtual(CD_CPU, in.mnemonic(), MTD_void);
+                return;
+            }
+            case IMM -> operand.accept(cb);
+            default -> {
+                if(mode.helper != null) cb.aload(cpu);
+
+                operand.accept(cb);
+
+                if(mode.helper != null) {
+                    cb.invokevirtual(CD_CPU, mode.helper, MTD_MODE);
+                }
+            }
+        }
+        cb.invokevirtual(CD_CPU, in.mnemonic(), MTD_OP);
+    }
+}
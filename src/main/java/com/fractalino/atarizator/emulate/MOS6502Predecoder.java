@@ -0,0 +1,105 @@
+/*
+ *  Copyright (c) 2025/2026, fractalino
+ *
+ *  This file is part of Atarizator.
+ *  It is subject to the terms of the GNU General Public License v3.
+ *  For details, see the LICENSE file at the root of the project.
+ */
+package com.fractalino.atarizator.emulate;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Cache of instructions decoded from ROM, indexed by bus address.
+ *
+ * An entry packs the opcode in bits 0-7 and the operand in bits 8-23, with
+ * bit 24 set; the operand of IMM instructions is the address of their
+ * immediate byte. Entries are decoded on first execution and all of them
+ * are dropped when the bus switches banks or a ROM they were read from is
+ * written to.
+ *
+ * @author fractalino
+ */
+final class MOS6502Predecoder implements BankSwitchListener {
+
+    private static final int EMPTY = 0;
+    private static final int VALID = 1 << 24;
+    /** Not (entirely) in ROM: run by the interpreter. */
+    static final int NOT_ROM = -1;
+
+    private final Bus bus;
+    private final int[] entries = new int[0x10000];
+    private int decoded = 0;
+    private final Set<Memory> watched =
+            Collections.newSetFromMap(new IdentityHashMap<>());
+
+    MOS6502Predecoder(Bus bus) {
+        this.bus = bus;
+
+        bus.registerBankSwitchListener(this);
+    }
+
+    /**
+     * @param pc a 16-bit address
+     * @return the entry for pc, or {@link #NOT_ROM}
+     */
+    int lookup(int pc) {
+        int e = entries[pc];
+
+        return e != EMPTY ? e : decode(pc);
+    }
+
+    private int decode(int pc) {
+        if(!bus.isROM(pc)) return entries[pc] = NOT_ROM;
+
+        int op = bus.read(pc);
+        var in = MOS6502.INSTRUCTIONS[op];
+
+        int end = pc + in.length() - 1;
+        if(end > 0xFFFF) return entries[pc] = NOT_ROM;
+
+        for(int a = pc; a <= end; a++) {
+            if(a != pc && !bus.isROM(a)) return entries[pc] = NOT_ROM;
+
+            var mem = bus.memoryAt(a);
+            if(mem != null && watched.add(mem)) {
+                // listeners run before the write: skip rewrites of a value
+                mem.registerMemoryWriteListener((addr, v) -> {
+                    if(decoded > 0 && mem.read(addr) != (v & 0xFF)) flush();
+                });
+            }
+        }
+
+        int operand = in.mode() == MOS6502.AddressingMode.IMM
+                ? pc + 1
+                : switch(in.mode().operandBytes) {
+                    case 1 -> bus.read(pc + 1);
+                    case 2 -> bus.loadWord(pc + 1);
+                    default -> 0;
+                };
+
+        decoded++;
+
+        return entries[pc] = VALID | operand << 8 | op;
+    }
+
+    void flush() {
+        Arrays.fill(entries, EMPTY);
+        decoded = 0;
+    }
+
+    @Override
+    public void onBankSwitch() {
+        flush();
+    }
+
+    @Override
+    public void onBankSwitch(int addr, int length) {
+        // instructions starting up to 2 bytes before reach into the range
+        Arrays.fill(entries, Math.max(addr - 2, 0),
+                Math.min(addr + length, entries.length), EMPTY);
+    }
+}
@@ -0,0 +1,444 @@
+/*
+ *  Copyright (c) 2025/2026, fractalino
+ *
+ *  This file is part of Atarizator.
+ *  It is subject to the terms of the GNU General Public License v3.
+ *  For details, see the LICENSE file at the root of the project.
+ */
+package com.fractalino.atarizator.emulate;
+
+import com.fractalino.atarizator.emulate.MOS6502.AddressingMode;
+import com.fractalino.atarizator.emulate.MOS6502.Instruction;
+
+import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.Label;
+import java.lang.constant.ClassDesc;
+import java.lang.constant.MethodTypeDesc;
+import java.lang.foreign.MemorySegment;
+import java.lang.invoke.MethodHandles;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.fractalino.atarizator.emulate.MOS6502CodeGen.CD_CPU;
+import static java.lang.constant.ConstantDescs.*;
+
+/**
+ * Translates hot basic blocks of 6502 code into JVM bytecode.
+ *
+ * A block starts at a PC that was interpreted {@link #HOT_THRESHOLD} times
+ * and ends with the first instruction that transfers control, at the end
+ * of the page or wherever the code stops being backed by a {@link Memory}.
+ * Operands are read once and become constants; the generated class is a
+ * hidden nestmate of MOS6502 and calls the interpreter's own operation and
+ * addressing methods, so cycles and page cross penalties are unchanged.
+ * Before each access to the bus, the CPU clock is brought to the start of
+ * the instruction, as devices see it when interpreted.
+ *
+ * Blocks are invalidated by a {@link MemoryWriteListener} on the memory
+ * they were read from. A block that overwrites its own code returns right
+ * after the offending store; one that banks out its own code, right after
+ * the access that did it. Like the interpreter, a block returns right after
+ * an access that raised an interrupt or otherwise {@link MOS6502#stopRun()
+ * stopped the run}, and it is only run if it can't cross the end of the
+ * run, as {@link Block#maxCycles} tell.
+ *
+ * @author fractalino
+ */
+final class MOS6502Recompiler implements BankSwitchListener {
+
+    static final int HOT_THRESHOLD = 64;
+
+    private static final int MAX_BLOCK_INSTRUCTIONS = 64;
+    private static final int COLD = -1; // can't be translated, stop counting
+
+    private static final Set<String> TERMINALS = Set.of(
+            "BRK", "JSR", "JMP", "RTS", "RTI", "JAM", "LOG"
+    );
+
+    private static final Set<String> WRITERS = Set.of(
+            "STA", "STX", "STY", "SAX", "PHA", "PHP",
+            "ASL", "LSR", "ROL", "ROR", "INC", "DEC",
+            "SLO", "RLA", "SRE", "RRA", "DCP", "ISC"
+    );
+
+    private static final Set<String> STACK = Set.of(
+            "PHA", "PHP", "PLA", "PLP"
+    );
+
+    private static final ClassDesc CD_BLOCK =
+            ClassDesc.of(Block.class.getName());
+    private static final MethodTypeDesc MTD_RUN =
+            MethodTypeDesc.of(CD_int, CD_CPU);
+
+    private final Bus bus;
+    private final MethodHandles.Lookup lookup;
+
+    private final Block[] cache = new Block[0x10000];
+    private final int[] heat = new int[0x10000];
+    private final Map<Memory, Watch> watches = new IdentityHashMap<>();
+    /** The block last returned by {@link #lookup(int)}, maybe running. */
+    private Block running = null;
+
+    /**
+     * @param bus the bus code is fetched from
+     * @param lookup a full privilege lookup on MOS6502
+     */
+    MOS6502Recompiler(Bus bus, MethodHandles.Lookup lookup) {
+        this.bus = bus;
+        this.lookup = lookup;
+
+        bus.registerBankSwitchListener(this);
+    }
+
+    /**
+     * Returns the translated block starting at pc, translating it if it
+     * just became hot, or null if pc has to be interpreted.
+     *
+     * @param pc
+     * @return
+     */
+    Block lookup(int pc) {
+        if(pc > 0xFFFF) return null;
+
+        Block b = cache[pc];
+        if(b != null) {
+            if(bus.memoryAt(pc) == b.mem && bus.memoryOffset(pc) == b.offset) {
+                return running = b;
+            }
+
+            // banked out
+            drop(b);
+        }
+
+        int h = heat[pc];
+        if(h == COLD) return null;
+
+        if(++h < HOT_THRESHOLD) {
+            heat[pc] = h;
+            return null;
+        }
+
+        b = translate(pc);
+        if(b == null) {
+            heat[pc] = COLD;
+            return null;
+        }
+
+        heat[pc] = 0;
+        cache[pc] = b;
+        watch(b);
+
+        return running = b;
+    }
+
+    /**
+     * Drops every translated block.
+     */
+    void flush() {
+        for(var w : watches.values()) {
+            w.mem.unregisterMemoryWriteListener(w);
+        }
+
+        watches.clear();
+        Arrays.fill(cache, null);
+        Arrays.fill(heat, 0);
+        running = null;
+    }
+
+    @Override
+    public void onBankSwitch() {
+        // blocks stay in one page of one memory: their first byte tells
+        var b = running;
+        if(b != null && !b.invalid && (bus.memoryAt(b.pc) != b.mem
+                || bus.memoryOffset(b.pc) != b.offset)) drop(b);
+    }
+
+    record Decoded(int pc, int opcode, int operand, Instruction in) {
+    }
+
+    private Block translate(int pc) {
+        var code = decode(pc);
+        if(code.isEmpty()) return null;
+
+        return define(pc, length(code), maxCycles(code), assemble(code));
+    }
+
+    /**
+     * Decodes the block starting at pc, as it is mapped now.
+     *
+     * @param pc
+     * @return its instructions, none if pc can't be translated
+     */
+    List<Decoded> decode(int pc) {
+        Memory mem = bus.memoryAt(pc);
+        if(mem == null) return List.of();
+
+        int offset = bus.memoryOffset(pc);
+        var code = new ArrayList<Decoded>();
+
+        int a = pc;
+        while(code.size() < MAX_BLOCK_INSTRUCTIONS) {
+            int opcode = mem.read(offset + a - pc);
+            var in = MOS6502.INSTRUCTIONS[opcode];
+            int end = a + in.length() - 1;
+
+            // LOG records the cycle counter, only exact at block start
+            if(opcode == 0xF2 && !code.isEmpty()) break;
+
+            // blocks stay inside one page of one memory, so checking
+            // their first byte is enough to notice banking.
+            if((end >>> 8) != (pc >>> 8)) break;
+            if(bus.memoryAt(end) != mem
+                    || bus.memoryOffset(end) != offset + end - pc) break;
+
+            int operand = 0;
+            for(int i = in.length() - 1; i > 0; i--) {
+                operand = (operand << 8) | mem.read(offset + a + i - pc);
+            }
+
+            code.add(new Decoded(a, opcode, operand, in));
+            a = end + 1;
+
+            if(in.mode() == AddressingMode.REL
+                    || TERMINALS.contains(in.mnemonic())) break;
+        }
+
+        return code;
+    }
+
+    /**
+     * @param code a block made by {@link #decode(int)}
+     * @return the class file of its translation
+     */
+    static byte[] assemble(List<Decoded> code) {
+        return MOS6502CodeGen.build("MOS6502$Block", Block.class, "run",
+                MTD_RUN, cb -> emit(cb, code));
+    }
+
+    /**
+     * @param code a block made by {@link #decode(int)}
+     * @return its length in bytes
+     */
+    static int length(List<Decoded> code) {
+        var first = code.getFirst();
+        var last = code.getLast();
+
+        return last.pc() + last.in().length() - first.pc();
+    }
+
+    /**
+     * @param code a block made by {@link #decode(int)}
+     * @return the most cycles it can take: page crossings, decimal mode
+     *         and branches add up to 2 to any instruction
+     */
+    static int maxCycles(List<Decoded> code) {
+        int cycles = 0;
+        for(var d : code) cycles += MOS6502.CYCLES[d.opcode()] + 2;
+
+        return cycles;
+    }
+
+    /**
+     * Defines the translation of the block at pc made by 
+     * {@link #assemble(List)}, as it is mapped now.
+     */
+    private Block define(int pc, int length, int maxCycles, byte[] bytes) {
+        var b = (Block) MOS6502CodeGen.instantiate(lookup, bytes);
+
+        b.pc = pc;
+        b.mem = bus.memoryAt(pc);
+        b.offset = bus.memoryOffset(pc);
+        b.length = length;
+        b.maxCycles = maxCycles;
+
+        return b;
+    }
+
+    /**
+     * Installs a translation made ahead of time by {@link #assemble(List)}
+     * from the code now at pc. It is then run and invalidated like any 
+     * other block.
+     *
+     * @param pc
+     * @param length of the block in bytes
+     * @param bytes
+     */
+    void install(int pc, int length, byte[] bytes) {
+        var b = define(pc, length, maxCycles(decode(pc)), bytes);
+
+        if(cache[pc] != null) drop(cache[pc]);
+
+        heat[pc] = 0;
+        cache[pc] = b;
+        watch(b);
+    }
+
+    private static void emit(CodeBuilder cb, List<Decoded> code) {
+        final int cpu = 1;
+
+        cb.aload(cpu).iconst_0().putfield(CD_CPU, "penalty", CD_int);
+
+        int cycles = 0;
+        for(int i = 0; i < code.size(); i++) {
+            var d = code.get(i);
+            if(i > 0 && accessesBus(d.in())) MOS6502CodeGen.elapsed(cb, cpu, cycles);
+            cycles += MOS6502.CYCLES[d.opcode()];
+
+            cb.aload(cpu).loadConstant(d.opcode())
+                    .putfield(CD_CPU, "currentOpcode", CD_int);
+            MOS6502CodeGen.execute(cb, cpu, d.in(), d.pc(), d.operand());
+
+            if(i == code.size() - 1) break;
+
+            boolean invalidates = mayInvalidate(d.in());
+            if(invalidates || accessesBus(d.in())) {
+                Label stop = cb.newLabel();
+                Label next = cb.newLabel();
+
+                if(invalidates) {
+                    cb.aload(0).getfield(CD_BLOCK, "invalid", CD_boolean);
+                    cb.ifne(stop);
+                }
+                cb.aload(cpu).getfield(CD_CPU, "interrupted", CD_boolean);
+                cb.ifeq(next);
+                cb.labelBinding(stop);
+                returnCycles(cb, cycles);
+                cb.labelBinding(next);
+            }
+        }
+
+        returnCycles(cb, cycles);
+    }
+
+    /**
+     * Whether in can overwrite or bank out the code after it: stores and
+     * accesses beyond the zero page.
+     */
+    private static boolean mayInvalidate(Instruction in) {
+        if(WRITERS.contains(in.mnemonic())) return true;
+
+        return switch(in.mode()) {
+            case IMP, IMP_IMM, IMM, ZPG, ZPX, ZPY, REL -> false;
+            default -> true;
+        };
+    }
+
+    /**
+     * Whether in accesses the bus beyond its own code, where a device may
+     * look at the clock.
+     */
+    private static boolean accessesBus(Instruction in) {
+        return switch(in.mode()) {
+            case IMM, IMP_IMM, REL -> false;
+            case IMP -> STACK.contains(in.mnemonic());
+            default -> true;
+        };
+    }
+
+    private static void returnCycles(CodeBuilder cb, int cycles) {
+        cb.loadConstant(cycles)
+                .aload(1).getfield(CD_CPU, "penalty", CD_int)
+                .iadd()
+                .ireturn();
+    }
+
+    private void watch(Block b) {
+        watches.computeIfAbsent(b.mem, Watch::new).add(b);
+    }
+
+    private void drop(Block b) {
+        b.invalid = true;
+        if(cache[b.pc] == b) cache[b.pc] = null;
+
+        var w = watches.get(b.mem);
+        if(w != null) w.blocks.remove(b);
+    }
+
+    /**
+     * A translated block. Subclasses are generated by the recompiler.
+     */
+    abstract static class Block {
+        int pc;
+        Memory mem;
+        int offset;
+        int length;
+        /** Upper bound of the cycles it takes. */
+        int maxCycles;
+
+        boolean invalid;
+
+        /**
+         * Runs the block.
+         *
+         * @param cpu
+         * @return the cycles it took
+         */
+        abstract int run(MOS6502<?> cpu);
+    }
+
+    /**
+     * Tracks which bytes of a memory hold translated code.
+     */
+    private final class Watch implements MemoryWriteListener {
+        private final Memory mem;
+        private final int mask;
+        private final long[] code;
+        private final List<Block> blocks = new ArrayList<>();
+
+        Watch(Memory mem) {
+            this.mem = mem;
+            this.mask = mem.getCapacity() - 1;
+            this.code = new long[(mem.getCapacity() + 63) >>> 6];
+
+            mem.registerMemoryWriteListener(this);
+        }
+
+        void add(Block b) {
+            blocks.add(b);
+            mark(b);
+        }
+
+        private void mark(Block b) {
+            for(int i = b.offset; i < b.offset + b.length; i++) {
+                code[i >>> 6] |= 1L << i;
+            }
+        }
+
+        @Override
+        public void onMemoryWrite(int addr, int v) {
+            int off = addr & mask;
+
+            if((code[off >>> 6] & (1L << off)) != 0) invalidate(off);
+        }
+
+        @Override
+        public void onMemoryLoad(int addr, MemorySegment data) {
+            for(int i = 0; i < data.byteSize(); i++) {
+                int off = (addr + i) & mask;
+
+                if((code[off >>> 6] & (1L << off)) != 0) invalidate(off);
+            }
+        }
+
+        private void invalidate(int off) {
+            Arrays.fill(code, 0);
+
+            for(var it = blocks.iterator(); it.hasNext();) {
+                var b = it.next();
+
+                if(off >= b.offset && off < b.offset + b.length) {
+                    b.invalid = true;
+                    if(cache[b.pc] == b) cache[b.pc] = null;
+                    it.remove();
+                } else {
+                    mark(b);
+                }
+            }
+        }
+    }
+}
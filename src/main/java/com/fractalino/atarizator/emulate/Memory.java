@@ -7,8 +7,14 @@
  */
 package com.fractalino.atarizator.emulate;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.lang.foreign.MemorySegment;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Objects;
+
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
 
 /**
  *
@@ -16,7 +22,39 @@ import java.util.List;
  */
 public abstract class Memory implements Device {
     
-    private final List<MemoryWriteListener> mwls = new ArrayList<>(1);
+    /** Granularity of dirty tracking. */
+    public static final int PAGE_SIZE = 256;
+    
+    private static final VarHandle DIRTY = 
+            MethodHandles.arrayElementVarHandle(byte[].class);
+    
+    private static final Registration[] NONE = {};
+    
+    /** 
+     * Copy-on-write: replaced, never modified, by (un)registration. Not 
+     * volatile, which would cost every write: listeners registered by 
+     * another thread are seen once it synchronizes with the writing one.
+     */
+    private Registration[] mwls = NONE;
+    
+    /** 
+     * Non-zero for each page written since it was last cleared. A byte
+     * rather than a bit, so marking is a plain store, without a branch or
+     * a read-modify-write; cleared atomically by any thread.
+     */
+    private final byte[] dirty;
+    private final int pageMask;
+    
+    /**
+     * @param capacity the capacity the subclass will report
+     */
+    protected Memory(int capacity) {
+        int pages = Math.max(1, (capacity + PAGE_SIZE - 1) / PAGE_SIZE);
+        if(Integer.bitCount(pages) != 1) pages = Integer.highestOneBit(pages) << 1;
+        
+        this.pageMask = pages - 1;
+        this.dirty = new byte[pages];
+    }
     
     public abstract int getCapacity();
     protected abstract int doRead(int addr);
@@ -27,19 +65,242 @@ public abstract class Memory implements Device {
         return doRead(addr);
     }
     
+    @Override
+    public final int peek(int addr) {
+        return doRead(addr);
+    }
+    
+    /**
+     * Copies at once if the range is inside the memory and it has a 
+     * segment.
+     */
+    @Override
+    public void peekRange(int addr, byte[] dst, int offset, int length) {
+        var seg = segment();
+        
+        if(seg == null || addr < 0 || addr + length > getCapacity()) {
+            for(int i = 0; i < length; i++) dst[offset + i] = (byte) doRead(addr + i);
+            return;
+        }
+        
+        MemorySegment.copy(seg, JAVA_BYTE, addr, dst, offset, length);
+    }
+    
     @Override
     public final void write(int addr, int v) {
-        for(var mwl : mwls) mwl.onMemoryWrite(addr, v);
+        var regs = mwls;
+        if(regs.length != 0) notify(regs, addr, v);
         
         doWrite(addr, v);
+        dirty[(addr >>> 8) & pageMask] = 1;
+    }
+    
+    /**
+     * Addresses are mapped to pages as {@link #write(int, int)} wraps them
+     * around a capacity that is a power of 2.
+     * 
+     * @return the number of pages of {@link #PAGE_SIZE} bytes tracked
+     */
+    public int getPageCount() {
+        return pageMask + 1;
+    }
+    
+    /**
+     * @param page
+     * @return whether page was written since it was last cleared
+     */
+    public boolean isDirty(int page) {
+        return (byte) DIRTY.getVolatile(dirty, page) != 0;
+    }
+    
+    /**
+     * @return the pages written since they were last cleared
+     */
+    public BitSet getDirtyPages() {
+        var pages = new BitSet(dirty.length);
+        for(int p = 0; p < dirty.length; p++) {
+            if((byte) DIRTY.getVolatile(dirty, p) != 0) pages.set(p);
+        }
+        
+        return pages;
+    }
+    
+    /**
+     * Returns the pages written since they were last cleared and clears 
+     * them, atomically: a write concurrent to it is either returned or left
+     * dirty.
+     * 
+     * @return 
+     */
+    public BitSet takeDirtyPages() {
+        var pages = new BitSet(dirty.length);
+        for(int p = 0; p < dirty.length; p++) {
+            if((byte) DIRTY.getAndSet(dirty, p, (byte) 0) != 0) pages.set(p);
+        }
+        
+        return pages;
+    }
+    
+    public void clearDirtyPages() {
+        for(int p = 0; p < dirty.length; p++) DIRTY.setVolatile(dirty, p, (byte) 0);
     }
     
+    /**
+     * Writes data at offset at once: listeners are notified once, with the
+     * part of the range they registered for.
+     * 
+     * @param offset
+     * @param data 
+     */
+    public final void load(int offset, byte[] data) {
+        load(offset, MemorySegment.ofArray(data));
+    }
+    
+    /**
+     * @param offset
+     * @param data
+     * @see #load(int, byte[]) 
+     */
+    public final void load(int offset, MemorySegment data) {
+        int length = (int) Math.min(data.byteSize(), Integer.MAX_VALUE);
+        Objects.checkFromIndexSize(offset, length, getCapacity());
+        
+        var regs = mwls;
+        if(regs.length != 0) notify(regs, offset, data);
+        
+        doLoad(offset, data);
+        
+        if(length != 0) {
+            for(int p = offset >>> 8; p <= (offset + length - 1) >>> 8; p++) {
+                dirty[p & pageMask] = 1;
+            }
+        }
+    }
+    
+    /**
+     * Copies length bytes from from to offset to of dst, which can be this
+     * memory, even overlapping. Listeners of dst are notified once.
+     * 
+     * @param from
+     * @param dst
+     * @param to
+     * @param length 
+     */
+    public final void copy(int from, Memory dst, int to, int length) {
+        Objects.checkFromIndexSize(from, length, getCapacity());
+        
+        var src = segment();
+        if(src == null) {
+            var bytes = new byte[length];
+            for(int i = 0; i < length; i++) bytes[i] = (byte) doRead(from + i);
+            
+            src = MemorySegment.ofArray(bytes);
+        } else {
+            src = src.asSlice(from, length);
+        }
+        
+        dst.load(to, src);
+    }
+    
+    /**
+     * Writes data at offset, already checked to fit. Implementations backed
+     * by an array or a segment should copy it at once.
+     * 
+     * @param offset
+     * @param data 
+     */
+    protected void doLoad(int offset, MemorySegment data) {
+        for(int i = 0; i < data.byteSize(); i++) {
+            doWrite(offset + i, data.get(JAVA_BYTE, i));
+        }
+    }
+    
+    /**
+     * @return the content of the memory as a segment, if it has one
+     */
+    protected MemorySegment segment() {
+        return null;
+    }
+    
+    private static void notify(Registration[] regs, int offset, 
+            MemorySegment data) {
+        long end = offset + data.byteSize();
+        
+        for(var reg : regs) {
+            if(reg.last == -1) {
+                reg.mwl.onMemoryLoad(offset, data);
+                continue;
+            }
+            
+            long from = Math.max(offset, reg.from);
+            long to = Math.min(end, reg.from + (reg.last & 0xFFFFFFFFL) + 1);
+            
+            if(from < to) {
+                reg.mwl.onMemoryLoad((int) from, 
+                        data.asSlice(from - offset, to - from));
+            }
+        }
+    }
+    
+    private static void notify(Registration[] regs, int addr, int v) {
+        for(var reg : regs) {
+            if(Integer.compareUnsigned(addr - reg.from, reg.last) <= 0) {
+                reg.mwl.onMemoryWrite(addr, v);
+            }
+        }
+    }
+    
+    /**
+     * Registers mwl for every write, whatever the address.
+     * 
+     * @param mwl 
+     */
     public void registerMemoryWriteListener(MemoryWriteListener mwl) {
-        mwls.add(mwl);
+        register(new Registration(mwl, 0, -1));
+    }
+    
+    /**
+     * Registers mwl for the writes to addresses from from (inclusive) to 
+     * to (exclusive), as passed to {@link #write(int, int)}.
+     * 
+     * @param mwl
+     * @param from
+     * @param to 
+     */
+    public void registerMemoryWriteListener(MemoryWriteListener mwl, 
+            int from, int to) {
+        if(to <= from) {
+            throw new IllegalArgumentException("Empty range " + from + "-" + to);
+        }
+        
+        register(new Registration(mwl, from, to - from - 1));
+    }
+    
+    private synchronized void register(Registration reg) {
+        var regs = Arrays.copyOf(mwls, mwls.length + 1);
+        regs[regs.length - 1] = reg;
+        
+        mwls = regs;
+    }
+    
+    /**
+     * Unregisters every registration of mwl.
+     * 
+     * @param mwl 
+     */
+    public synchronized void unregisterMemoryWriteListener(MemoryWriteListener mwl) {
+        var regs = Arrays.stream(mwls)
+                .filter(reg -> reg.mwl != mwl)
+                .toArray(Registration[]::new);
+        
+        mwls = regs.length == 0 ? NONE : regs;
     }
     
-    public void unregisterMemoryWriteListener(MemoryWriteListener mwl) {
-        mwls.remove(mwl);
+    /** 
+     * A listener for addresses from to from + last, unsigned: last = -1 
+     * matches all of them. 
+     */
+    private record Registration(MemoryWriteListener mwl, int from, int last) {
     }
     
     public record MemoryRecord(
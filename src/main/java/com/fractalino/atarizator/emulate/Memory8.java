@@ -7,6 +7,8 @@
  */
 package com.fractalino.atarizator.emulate;
 
+import java.lang.foreign.MemorySegment;
+
 /**
  *
  * @author fractalino
@@ -22,6 +24,8 @@ public class Memory8 extends Memory {
     }
     
     public Memory8(int cap, int reg) {
+        super(cap);
+        
         this.cap = cap;
         this.reg = reg;
         
@@ -58,6 +62,16 @@ public class Memory8 extends Memory {
         return LL + (HH << 8);
     }
     
+    @Override
+    protected void doLoad(int offset, MemorySegment data) {
+        MemorySegment.copy(data, 0, segment(), offset, data.byteSize());
+    }
+    
+    @Override
+    protected MemorySegment segment() {
+        return MemorySegment.ofArray(mm);
+    }
+    
     @Override
     public int getCapacity() {
         return cap;
@@ -7,6 +7,10 @@
  */
 package com.fractalino.atarizator.emulate;
 
+import java.lang.foreign.MemorySegment;
+
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+
 /**
  *
  * @author fractalino
@@ -15,4 +19,18 @@ public interface MemoryWriteListener {
     
     public void onMemoryWrite(int addr, int v);
     
+    /**
+     * Called once before data is written from addr on by a bulk operation. 
+     * By default, it is passed to {@link #onMemoryWrite(int, int)} one 
+     * byte at a time.
+     * 
+     * @param addr
+     * @param data 
+     */
+    public default void onMemoryLoad(int addr, MemorySegment data) {
+        for(int i = 0; i < data.byteSize(); i++) {
+            onMemoryWrite(addr + i, data.get(JAVA_BYTE, i) & 0xFF);
+        }
+    }
+    
 }
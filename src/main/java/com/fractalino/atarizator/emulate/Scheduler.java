@@ -0,0 +1,207 @@
+/*
+ *  Copyright (c) 2025/2026, fractalino
+ *
+ *  This file is part of Atarizator.
+ *  It is subject to the terms of the GNU General Public License v3.
+ *  For details, see the LICENSE file at the root of the project.
+ */
+package com.fractalino.atarizator.emulate;
+
+import java.util.Arrays;
+
+/**
+ * Pending device events, keyed by master cycle.
+ *
+ * Each client registers once and gets a slot holding at most one deadline;
+ * scheduling it again moves the deadline. Slots are kept in a binary
+ * min-heap of primitive arrays, so finding the next deadline is O(1) and
+ * (re)scheduling O(log n), without allocations. Machines run the CPU up to
+ * {@link #next()}, then {@link #run(long)} the events that are due: a
+ * device with nothing pending costs nothing.
+ *
+ * @author fractalino
+ */
+public final class Scheduler {
+
+    public static final long NEVER = Long.MAX_VALUE;
+
+    /**
+     * A device event.
+     */
+    @FunctionalInterface
+    public interface Event {
+
+        /**
+         * @param cycle the deadline it was scheduled for, which the master
+         *              clock may have overshot by an instruction
+         */
+        public void fire(long cycle);
+    }
+
+    private Event[] events = new Event[4];
+    /** Deadline by slot, {@link #NEVER} if none. */
+    private long[] deadlines = new long[4];
+    /** Pending slots, heap ordered by deadline. */
+    private int[] heap = new int[4];
+    /** Position in heap by slot, -1 if not pending. */
+    private int[] positions = new int[4];
+
+    private int slots = 0;
+    private int pending = 0;
+
+    /** Told when {@link #next()} moves earlier, null if none. */
+    private Runnable onEarlier = null;
+
+    /**
+     * @param event
+     * @return the slot of event, for {@link #schedule(int, long)}
+     */
+    public int register(Event event) {
+        if(slots == events.length) {
+            int n = 2 * slots;
+
+            events = Arrays.copyOf(events, n);
+            deadlines = Arrays.copyOf(deadlines, n);
+            heap = Arrays.copyOf(heap, n);
+            positions = Arrays.copyOf(positions, n);
+        }
+
+        events[slots] = event;
+        deadlines[slots] = NEVER;
+        positions[slots] = -1;
+
+        return slots++;
+    }
+
+    /**
+     * @param onEarlier called when a deadline comes before {@link #next()},
+     *                  so that a CPU running up to it can stop sooner
+     */
+    public void setOnEarlier(Runnable onEarlier) {
+        this.onEarlier = onEarlier;
+    }
+
+    /**
+     * Sets the deadline of slot, replacing any pending one.
+     *
+     * @param slot
+     * @param cycle
+     */
+    public void schedule(int slot, long cycle) {
+        if(cycle == NEVER) {
+            cancel(slot);
+            return;
+        }
+
+        if(onEarlier != null && cycle < next()) onEarlier.run();
+
+        long old = deadlines[slot];
+        deadlines[slot] = cycle;
+
+        int i = positions[slot];
+        if(i < 0) {
+            i = pending++;
+            heap[i] = slot;
+            positions[slot] = i;
+            up(i);
+        } else if(cycle < old) {
+            up(i);
+        } else {
+            down(i);
+        }
+    }
+
+    public void cancel(int slot) {
+        int i = positions[slot];
+        if(i < 0) return;
+
+        deadlines[slot] = NEVER;
+        remove(i);
+    }
+
+    /**
+     * @param slot
+     * @return the deadline of slot, {@link #NEVER} if none
+     */
+    public long deadline(int slot) {
+        return deadlines[slot];
+    }
+
+    /**
+     * @return the earliest deadline, {@link #NEVER} if none
+     */
+    public long next() {
+        return pending == 0 ? NEVER : deadlines[heap[0]];
+    }
+
+    /**
+     * Fires, earliest first, the events due by cycle, including those they
+     * schedule for no later than cycle.
+     *
+     * @param cycle
+     */
+    public void run(long cycle) {
+        while(pending > 0 && deadlines[heap[0]] <= cycle) {
+            int slot = heap[0];
+            long deadline = deadlines[slot];
+
+            deadlines[slot] = NEVER;
+            remove(0);
+
+            events[slot].fire(deadline);
+        }
+    }
+
+    private void remove(int i) {
+        int slot = heap[i];
+        positions[slot] = -1;
+
+        int last = heap[--pending];
+        if(i == pending) return;
+
+        heap[i] = last;
+        positions[last] = i;
+        up(i);
+        down(positions[last]);
+    }
+
+    private void up(int i) {
+        int slot = heap[i];
+        long d = deadlines[slot];
+
+        while(i > 0) {
+            int parent = (i - 1) >>> 1;
+            if(deadlines[heap[parent]] <= d) break;
+
+            heap[i] = heap[parent];
+            positions[heap[i]] = i;
+            i = parent;
+        }
+
+        heap[i] = slot;
+        positions[slot] = i;
+    }
+
+    private void down(int i) {
+        int slot = heap[i];
+        long d = deadlines[slot];
+
+        while(true) {
+            int child = 2 * i + 1;
+            if(child >= pending) break;
+
+            if(child + 1 < pending
+                    && deadlines[heap[child + 1]] < deadlines[heap[child]]) {
+                child++;
+            }
+            if(deadlines[heap[child]] >= d) break;
+
+            heap[i] = heap[child];
+            positions[heap[i]] = i;
+            i = child;
+        }
+
+        heap[i] = slot;
+        positions[slot] = i;
+    }
+}
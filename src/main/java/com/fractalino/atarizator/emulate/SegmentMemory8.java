@@ -0,0 +1,160 @@
+/*
+ *  Copyright (c) 2025/2026, fractalino
+ *
+ *  This file is part of Atarizator.
+ *  It is subject to the terms of the GNU General Public License v3.
+ *  For details, see the LICENSE file at the root of the project.
+ */
+package com.fractalino.atarizator.emulate;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Memory of bytes in a {@link MemorySegment}: off-heap, mapped from a file,
+ * or any segment supplied by the caller.
+ *
+ * The segment can be handed to renderers, snapshotters or native code
+ * without copying it, and a file mapped memory can be inspected by other
+ * processes while the machine runs. Like {@link Memory8}, addresses wrap
+ * around the capacity, which must be a power of 2.
+ *
+ * @author fractalino
+ */
+public class SegmentMemory8 extends Memory implements AutoCloseable {
+
+    private final MemorySegment segment;
+    private final int mask;
+    /** Owner of the segment, null if it belongs to the caller. */
+    private final Arena arena;
+
+    /**
+     * Off-heap memory, zeroed, released by {@link #close()}.
+     *
+     * @param cap
+     */
+    public SegmentMemory8(int cap) {
+        this(checkCapacity(cap), Arena.ofShared());
+    }
+
+    private SegmentMemory8(int cap, Arena arena) {
+        this(arena.allocate(cap), arena);
+    }
+
+    /**
+     * Wraps a segment owned by the caller.
+     *
+     * @param segment its size must be a power of 2
+     */
+    public SegmentMemory8(MemorySegment segment) {
+        this(segment, null);
+    }
+
+    private SegmentMemory8(MemorySegment segment, Arena arena) {
+        super(checkCapacity(segment));
+
+        this.segment = segment;
+        this.mask = (int) segment.byteSize() - 1;
+        this.arena = arena;
+    }
+
+    /**
+     * Maps cap bytes of file, which is created or extended as needed.
+     * Writes reach the file; {@link #force()} makes them durable.
+     *
+     * @param file
+     * @param cap
+     * @return the memory, to be closed to unmap it
+     * @throws IOException
+     */
+    public static SegmentMemory8 map(Path file, int cap) throws IOException {
+        checkCapacity(cap);
+
+        var arena = Arena.ofShared();
+        try(var ch = FileChannel.open(file, CREATE, READ, WRITE)) {
+            return new SegmentMemory8(
+                    ch.map(FileChannel.MapMode.READ_WRITE, 0, cap, arena),
+                    arena
+            );
+        } catch(IOException | RuntimeException ex) {
+            arena.close();
+            throw ex;
+        }
+    }
+
+    private static int checkCapacity(MemorySegment segment) {
+        if(segment.byteSize() > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Segment too large");
+        }
+
+        return checkCapacity((int) segment.byteSize());
+    }
+
+    private static int checkCapacity(int cap) {
+        if(cap <= 0 || Integer.bitCount(cap) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of 2: "
+                    + cap);
+        }
+
+        return cap;
+    }
+
+    @Override
+    protected void doWrite(int addr, int v) {
+        segment.set(JAVA_BYTE, addr & mask, (byte) v);
+    }
+
+    @Override
+    protected int doRead(int addr) {
+        return segment.get(JAVA_BYTE, addr & mask) & 0xFF;
+    }
+
+    @Override
+    protected void doLoad(int offset, MemorySegment data) {
+        MemorySegment.copy(data, 0, segment, offset, data.byteSize());
+    }
+
+    @Override
+    protected MemorySegment segment() {
+        return segment;
+    }
+
+    @Override
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * The backing segment. Writes to it bypass the write listeners.
+     *
+     * @return
+     */
+    public MemorySegment getSegment() {
+        return segment;
+    }
+
+    /**
+     * Writes a file mapped memory back to its file; no-op otherwise.
+     */
+    public void force() {
+        if(segment.isMapped()) segment.force();
+    }
+
+    /**
+     * Releases the segment if this memory allocated or mapped it.
+     */
+    @Override
+    public void close() {
+        if(arena != null) arena.close();
+    }
+
+    @Override public void tick() {}
+}
@@ -0,0 +1,154 @@
+/*
+ *  Copyright (c) 2025/2026, fractalino
+ *
+ *  This file is part of Atarizator.
+ *  It is subject to the terms of the GNU General Public License v3.
+ *  For details, see the LICENSE file at the root of the project.
+ */
+package com.fractalino.atarizator.emulate;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+
+/**
+ * Fixed-size ring buffer of executed instructions.
+ *
+ * Each record is two longs: the packed PC, opcode and registers, and the
+ * CPU cycle at which the instruction started. Once full, the oldest records
+ * are overwritten. Recording never allocates; the buffer is either a
+ * heap array or, optionally, off-heap memory released by {@link #close()}.
+ *
+ * It is written by the emulation thread only: flush it while the CPU is
+ * not running.
+ *
+ * @author fractalino
+ */
+public final class TraceBuffer implements AutoCloseable {
+
+    /** First bytes of a trace file. */
+    public static final int MAGIC = 0x36355452; // "65TR"
+    public static final int VERSION = 1;
+
+    private final MemorySegment records;
+    private final Arena arena;
+    private final int mask;
+
+    private long written = 0;
+
+    /**
+     * @param capacity number of records kept, rounded up to a power of 2
+     * @param offHeap allocate the records outside of the Java heap
+     */
+    public TraceBuffer(int capacity, boolean offHeap) {
+        if(capacity <= 0 || capacity > 1 << 28) {
+            throw new IllegalArgumentException("capacity: " + capacity);
+        }
+
+        int size = Integer.highestOneBit(capacity);
+        if(size < capacity) size <<= 1;
+
+        this.mask = size - 1;
+        this.arena = offHeap ? Arena.ofShared() : null;
+        this.records = offHeap
+                ? arena.allocate(JAVA_LONG.byteSize() * 2 * size, 8)
+                : MemorySegment.ofArray(new long[2 * size]);
+    }
+
+    /**
+     * Records an instruction. Registers are truncated to 8 bits.
+     *
+     * @param pc address of the opcode
+     * @param opcode
+     * @param a
+     * @param x
+     * @param y
+     * @param s status register
+     * @param p stack pointer
+     * @param cycle CPU cycle at which the instruction started
+     */
+    public void record(int pc, int opcode, int a, int x, int y,
+            int s, int p, long cycle) {
+        long i = (written++ & mask) << 1;
+
+        records.setAtIndex(JAVA_LONG, i, pack(pc, opcode, a, x, y, s, p));
+        records.setAtIndex(JAVA_LONG, i + 1, cycle);
+    }
+
+    static long pack(int pc, int opcode, int a, int x, int y, int s, int p) {
+        return (long) (pc & 0xFFFF) << 48
+                | (long) (opcode & 0xFF) << 40
+                | (long) (a & 0xFF) << 32
+                | (long) (x & 0xFF) << 24
+                | (y & 0xFF) << 16
+                | (s & 0xFF) << 8
+                | (p & 0xFF);
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * @return the number of records held, at most the capacity
+     */
+    public int size() {
+        return (int) Math.min(written, mask + 1);
+    }
+
+    /**
+     * @return the number of records ever written, including overwritten ones
+     */
+    public long getWritten() {
+        return written;
+    }
+
+    public void clear() {
+        written = 0;
+    }
+
+    /**
+     * Writes the held records, oldest first, to file.
+     *
+     * The format is big-endian: the int {@link #MAGIC}, the int
+     * {@link #VERSION}, the long number of records written before the
+     * first one held and the int number of records, followed by the
+     * records as two longs each.
+     *
+     * @param file
+     * @throws IOException
+     * @see TraceDecoder
+     */
+    public void flush(Path file) throws IOException {
+        int n = size();
+        long first = written - n;
+
+        try(var out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(file), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(first);
+            out.writeInt(n);
+
+            for(long r = first; r < written; r++) {
+                long i = (r & mask) << 1;
+                out.writeLong(records.getAtIndex(JAVA_LONG, i));
+                out.writeLong(records.getAtIndex(JAVA_LONG, i + 1));
+            }
+        }
+    }
+
+    /**
+     * Releases off-heap records. The buffer can't be used afterwards.
+     */
+    @Override
+    public void close() {
+        if(arena != null) arena.close();
+    }
+}
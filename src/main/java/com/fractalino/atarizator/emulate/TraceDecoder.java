@@ -0,0 +1,87 @@
+/*
+ *  Copyright (c) 2025/2026, fractalino
+ *
+ *  This file is part of Atarizator.
+ *  It is subject to the terms of the GNU General Public License v3.
+ *  For details, see the LICENSE file at the root of the project.
+ */
+package com.fractalino.atarizator.emulate;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Prints a file written by {@link TraceBuffer#flush(Path)} as one line per
+ * instruction:
+ * <pre>
+ *  #record      cycle  PC   op mnemonic  A  X  Y  P  NV-BDIZC
+ * </pre>
+ *
+ * Usage: {@code TraceDecoder <trace file>}
+ *
+ * @author fractalino
+ */
+public final class TraceDecoder {
+
+    private static final String FLAGS = "NV-BDIZC";
+
+    private TraceDecoder() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if(args.length != 1) {
+            System.err.println("Usage: TraceDecoder <trace file>");
+            System.exit(2);
+        }
+
+        decode(Path.of(args[0]), System.out);
+    }
+
+    /**
+     * @param file
+     * @param out
+     * @throws IOException if file can't be read or isn't a trace
+     */
+    public static void decode(Path file, PrintStream out) throws IOException {
+        try(var in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(file), 1 << 16))) {
+            if(in.readInt() != TraceBuffer.MAGIC) {
+                throw new IOException(file + " is not a trace file");
+            }
+
+            int version = in.readInt();
+            if(version != TraceBuffer.VERSION) {
+                throw new IOException("Unsupported trace version " + version);
+            }
+
+            long first = in.readLong();
+            int n = in.readInt();
+
+            var sb = new StringBuilder(64);
+            for(int r = 0; r < n; r++) {
+                sb.setLength(0);
+                format(sb, first + r, in.readLong(), in.readLong());
+                out.println(sb);
+            }
+        }
+    }
+
+    static void format(StringBuilder sb, long index, long rec, long cycle) {
+        int pc = (int) (rec >>> 48) & 0xFFFF;
+        int op = (int) (rec >>> 40) & 0xFF;
+        int s = (int) (rec >>> 8) & 0xFF;
+
+        sb.append(String.format("#%-10d %10d  %04X  %02X %-5s %02X %02X %02X %02X  ",
+                index, cycle, pc, op, MOS6502.INSTRUCTIONS[op].mnemonic(),
+                (rec >>> 32) & 0xFF, (rec >>> 24) & 0xFF, (rec >>> 16) & 0xFF,
+                rec & 0xFF));
+
+        for(int b = 7; b >= 0; b--) {
+            sb.append((s & (1 << b)) != 0 ? FLAGS.charAt(7 - b) : '.');
+        }
+    }
+}
@@ -15,14 +15,12 @@ import com.fractalino.atarizator.emulate.MOS6502;
  * @author fractalino
  */
 public class Atari2600 extends Computer<Atari2600Bus, MOS6502<Atari2600Bus>> {
-    private int totalCycles = 0;
-    
-    public Atari2600() {
-        this(new Atari2600Bus());
+    public Atari2600(MOS6502.Feature... features) {
+        this(new Atari2600Bus(), features);
     }
     
-    private Atari2600(Atari2600Bus bus) {
-        super(bus, new MOS6502<>(bus)
+    private Atari2600(Atari2600Bus bus, MOS6502.Feature... features) {
+        super(bus, new MOS6502<>(bus, features)
         );
     }
     
@@ -31,15 +29,36 @@ public class Atari2600 extends Computer<Atari2600Bus, MOS6502<Atari2600Bus>> {
         bus.setCartridge(rom);
         
         cpu.reset();
+        compileROM(rom);
     }
 
     @Override
     public void step() {
-        int cycles = cpu.step();
-        totalCycles += cycles;
+        masterCycle += cpu.step();
+        
+        scheduler.run(masterCycle);
+    }
 
-        bus.getRIOT().tick(cycles);
-        bus.getTIA().tick(3 * cycles);
+    @Override
+    public long runCycles(long budget) {
+        long start = masterCycle;
+        long end = start + budget;
+        
+        // events scheduled since the last run, by the caller or a write
+        scheduler.run(masterCycle);
+        
+        // nothing changes between deadlines: the CPU runs up to the next
+        while(masterCycle < end) {
+            long cycles = cpu.runCycles(Math.min(end, scheduler.next())
+                    - masterCycle);
+            if(cycles == 0) break;
+            
+            masterCycle += cycles;
+            
+            scheduler.run(masterCycle);
+        }
+        
+        return masterCycle - start;
     }
     
 }
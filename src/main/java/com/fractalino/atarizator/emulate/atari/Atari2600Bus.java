@@ -7,9 +7,14 @@
  */
 package com.fractalino.atarizator.emulate.atari;
 
+import com.fractalino.atarizator.emulate.BankSwitchListener;
 import com.fractalino.atarizator.emulate.Bus;
 import com.fractalino.atarizator.emulate.Memory;
-import com.fractalino.atarizator.emulate.Memory8;
+import com.fractalino.atarizator.emulate.Scheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongSupplier;
 
 /**
  *
@@ -18,43 +23,103 @@ import com.fractalino.atarizator.emulate.Memory8;
 public class Atari2600Bus implements Bus {
     private final Atari2600TIA tia;
     private final Atari2600RIOT riot;
-    private final Memory8 cartridge; // The ROM
+    private Atari2600Cartridge cartridge;
+    /** Whether writes to the TIA go to the cartridge too. */
+    private boolean cartridgeWatchesTIA;
+    
+    /** 
+     * CPU cycles, to which the TIA and the RIOT catch up when they are 
+     * accessed: the cycle the current instruction started.
+     */
+    private LongSupplier clock = () -> 0;
     
-    private static final int MAX_CARTRIDGE_DIM = 4096;
+    private final List<BankSwitchListener> bsls = new ArrayList<>(1);
 
     public Atari2600Bus() {
         this.tia = new Atari2600TIA();
         this.riot = new Atari2600RIOT();
         
-        this.cartridge = new Memory8(MAX_CARTRIDGE_DIM);
+        setCartridge(new byte[Atari2600Cartridge.WINDOW]);
     }
     
+    /**
+     * Inserts a cartridge of the bank switching scheme detected from 
+     * romData.
+     * 
+     * @param romData
+     * @throws IllegalArgumentException if the scheme isn't supported
+     * @see Atari2600Cartridge#of(byte[])
+     */
     public void setCartridge(byte[] romData) {
-        for(int i = 0; i < romData.length && i < 4096; i++) {
-             this.cartridge.write(i, romData[i]);
+        setCartridge(Atari2600Cartridge.of(romData));
+    }
+    
+    public void setCartridge(Atari2600Cartridge cartridge) {
+        if(this.cartridge != null) this.cartridge.attach(null);
+        
+        this.cartridge = cartridge;
+        this.cartridgeWatchesTIA = cartridge.watchesTIA();
+        cartridge.attach(this);
+        
+        for(var bsl : bsls) bsl.onBankSwitch();
+    }
+    
+    public Atari2600Cartridge getCartridge() {
+        return cartridge;
+    }
+    
+    @Override
+    public void setClock(LongSupplier clock) {
+        this.clock = clock;
+    }
+    
+    @Override
+    public void setScheduler(Scheduler scheduler) {
+        riot.setScheduler(scheduler);
+    }
+    
+    /**
+     * @return the CPU cycle of the access in progress
+     */
+    long cycle() {
+        return clock.getAsLong();
+    }
+    
+    /**
+     * Notifies a bank switch of the cartridge at every mirror of its 
+     * window.
+     * 
+     * @param addr offset in the window
+     * @param length 
+     */
+    void cartridgeSwitched(int addr, int length) {
+        for(int mirror = 0x1000; mirror < 0x10000; mirror += 0x2000) {
+            for(var bsl : bsls) bsl.onBankSwitch(mirror + addr, length);
         }
     }
 
     @Override
     public int read(int addr) {
-        // The 6507 only has 13 address lines (A0-A12). Handle this:
-        addr &= 0x1FFF;
+        // The 6507 only has 13 address lines (A0-A12): only they are 
+        // decoded. The cartridge sees all of them, FE bank switches on A13.
 
         // A12 = 1? It's the Cartridge ($1000 - $1FFF)
         if ((addr & 0x1000) != 0) {
-            return cartridge.read(addr & 0x0FFF);
+            return cartridge.read(addr);
         }
 
         // A12 = 0. It's system memory.
         
-        // A7 = 0 and A9 = 0? TIA ($0000 - $007F)
+        // A7 = 0? TIA ($0000 - $007F)
         if ((addr & 0x0080) == 0) {
+            tia.sync(clock.getAsLong());
             return tia.read(addr & 0x3F); // TIA is mirrored every 64 bytes
         }
 
         // A9 = 1? RIOT I/O and Timer ($0200 - $02FF)
         if ((addr & 0x0200) != 0) {
-             return riot.readIO(addr);
+            riot.sync(clock.getAsLong());
+            return riot.readIO(addr);
         }
         
         // Other: RIOT RAM ($0080 - $00FF)
@@ -62,22 +127,31 @@ public class Atari2600Bus implements Bus {
     }
 
     @Override
-    public void write(int addr, int val) {
-        addr &= 0x1FFF;
+    public int peek(int addr) {
+        if ((addr & 0x1000) != 0) return cartridge.peek(addr);
+        if ((addr & 0x0080) == 0) return tia.read(addr & 0x3F);
+        if ((addr & 0x0200) != 0) return riot.peekIO(addr);
+        
+        return riot.getMemory().peek(addr & 0x7F);
+    }
 
-        // ROM Write? Illegal.
+    @Override
+    public void write(int addr, int val) {
+        // Cartridge ($1000 - $1FFF): ROM, unless it maps RAM or hotspots
         if ((addr & 0x1000) != 0) {
-            return; 
+            cartridge.write(addr, val);
+            return;
         }
 
         // TIA Write ($00 - $7F)
         if ((addr & 0x0080) == 0) {
-            tia.write(addr & 0x3F, val);
+            writeTIA(addr, val);
             return;
         }
 
         // RIOT I/O ($0200+)
         if ((addr & 0x0200) != 0) {
+            riot.sync(clock.getAsLong());
             riot.writeIO(addr, val);
             return;
         }
@@ -86,6 +160,57 @@ public class Atari2600Bus implements Bus {
         riot.writeRAM(addr, val);
     }
     
+    private void writeTIA(int addr, int val) {
+        tia.sync(clock.getAsLong());
+        tia.write(addr & 0x3F, val);
+        
+        // the cartridge sees the address lines too
+        if(cartridgeWatchesTIA && (addr & 0x1FFF) < 0x40) {
+            cartridge.writeTIA(addr, val);
+        }
+    }
+    
+    @Override
+    public Memory memoryAt(int addr) {
+        if ((addr & 0x1000) != 0) return cartridge.memoryAt(addr);
+        if ((addr & 0x0280) == 0x0080) return riot.getMemory();
+        
+        return null;
+    }
+    
+    /**
+     * The TIA and hot cartridge pages. The RIOT timer schedules its 
+     * changes until it expires.
+     */
+    @Override
+    public boolean isVolatile(int addr) {
+        if ((addr & 0x1000) != 0) return cartridge.memoryAt(addr) == null;
+        if ((addr & 0x0080) == 0) return true;
+        if ((addr & 0x0200) != 0) return riot.isVolatile(addr);
+        
+        return false;
+    }
+    
+    @Override
+    public int memoryOffset(int addr) {
+        return (addr & 0x1000) != 0 ? cartridge.memoryOffset(addr) : addr & 0x7F;
+    }
+    
+    @Override
+    public boolean isROM(int addr) {
+        return (addr & 0x1000) != 0 && cartridge.isROM(addr);
+    }
+    
+    @Override
+    public void registerBankSwitchListener(BankSwitchListener bsl) {
+        bsls.add(bsl);
+    }
+    
+    @Override
+    public void unregisterBankSwitchListener(BankSwitchListener bsl) {
+        bsls.remove(bsl);
+    }
+    
     public int loadWordZpBug(int addr) {
         int l = read(addr);
         int h = read((addr & 0xFF) == 0xFF ? (addr & 0xFF00) : addr + 1);
@@ -103,9 +228,17 @@ public class Atari2600Bus implements Bus {
 
     @Override
     public Memory.MemoryRecord[] enumMemory() {
-        return new Memory.MemoryRecord[] {
-            new Memory.MemoryRecord(cartridge, "Cartridge"),
-            new Memory.MemoryRecord(riot.getMemory(), "RIOT")
-        };
+        var ram = cartridge.getRAM();
+        
+        return ram == null
+                ? new Memory.MemoryRecord[] {
+                    new Memory.MemoryRecord(cartridge.getROM(), "Cartridge"),
+                    new Memory.MemoryRecord(riot.getMemory(), "RIOT")
+                }
+                : new Memory.MemoryRecord[] {
+                    new Memory.MemoryRecord(cartridge.getROM(), "Cartridge"),
+                    new Memory.MemoryRecord(ram, "Cartridge RAM"),
+                    new Memory.MemoryRecord(riot.getMemory(), "RIOT")
+                };
     }
 }
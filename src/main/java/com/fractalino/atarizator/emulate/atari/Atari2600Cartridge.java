@@ -0,0 +1,386 @@
+/*
+ *  Copyright (c) 2025/2026, fractalino
+ *
+ *  This file is part of Atarizator.
+ *  It is subject to the terms of the GNU General Public License v3.
+ *  For details, see the LICENSE file at the root of the project.
+ */
+package com.fractalino.atarizator.emulate.atari;
+
+import com.fractalino.atarizator.emulate.Device;
+import com.fractalino.atarizator.emulate.Memory;
+import com.fractalino.atarizator.emulate.Memory8;
+
+import java.lang.foreign.MemorySegment;
+import java.util.Arrays;
+
+/**
+ * A cartridge and its bank switching hardware, seen through the 4 KB window
+ * at $1000-$1FFF.
+ *
+ * The window is split in 128-byte pages, each mapped to a slice of the ROM
+ * image or of the cartridge RAM, separately for reads and writes: switching
+ * a bank only rewrites some slots of the page table. Accesses to hot pages,
+ * the ones holding hotspots or registers, go through {@link #readHot(int)}
+ * and {@link #writeHot(int, int)} instead, and code caches don't run code
+ * from them.
+ *
+ * Addresses passed to a cartridge are CPU addresses: all but a few
+ * schemes only look at A0-A11.
+ *
+ * @author fractalino
+ */
+public abstract class Atari2600Cartridge implements Device {
+
+    public static final int WINDOW = 0x1000;
+
+    protected static final int PAGE_SIZE = 0x80;
+
+    private static final int PAGE_SHIFT = 7;
+    private static final int PAGES = WINDOW >>> PAGE_SHIFT;
+    private static final int OFFSET = PAGE_SIZE - 1;
+
+    protected final Memory8 rom;
+    protected final int size;
+
+    private final Memory8[] readPages = new Memory8[PAGES];
+    private final int[] readBases = new int[PAGES];
+    private final Memory8[] writePages = new Memory8[PAGES];
+    private final int[] writeBases = new int[PAGES];
+    /** Bit i set: page i is hot. */
+    private int hot = 0;
+
+    private Atari2600Bus bus = null;
+
+    /**
+     * @param image the ROM, copied in a memory as large as the next power
+     *              of 2
+     */
+    protected Atari2600Cartridge(byte[] image) {
+        this.size = image.length;
+        this.rom = new Memory8(Math.max(
+                Integer.highestOneBit(Math.max(size - 1, 1)) << 1, PAGE_SIZE
+        ));
+
+        rom.load(0, MemorySegment.ofArray(image));
+    }
+
+    /**
+     * Detects the bank switching scheme of a ROM image from its size and,
+     * where sizes are shared, from the code that switches banks, like
+     * Stella does.
+     *
+     * @param image
+     * @return a cartridge in its power-on state
+     * @throws IllegalArgumentException if the scheme isn't supported
+     */
+    public static Atari2600Cartridge of(byte[] image) {
+        int size = image.length;
+
+        if(size > 0 && size <= WINDOW && Integer.bitCount(size) == 1) {
+            return new CartridgeStandard(image, false);
+        }
+
+        return switch(size) {
+            case 0x2000 -> {
+                if(isProbablySC(image)) yield new CartridgeStandard(image, true);
+                if(Arrays.equals(image, 0, WINDOW, image, WINDOW, 2 * WINDOW)) {
+                    yield new CartridgeStandard(
+                            Arrays.copyOf(image, WINDOW), false
+                    );
+                }
+                if(isProbablyE0(image)) yield new CartridgeE0(image);
+                if(isProbably3F(image)) yield new Cartridge3F(image);
+                if(isProbablyFE(image) && !isProbablyF8(image)) {
+                    yield new CartridgeFE(image);
+                }
+
+                yield new CartridgeStandard(image, false);
+            }
+            case CartridgeDPC.SIZE, CartridgeDPC.SIZE + 0xFF ->
+                    new CartridgeDPC(image);
+            case 0x4000 -> {
+                if(isProbablySC(image)) yield new CartridgeStandard(image, true);
+                if(isProbablyE7(image)) yield new CartridgeE7(image);
+                if(isProbably3F(image)) yield new Cartridge3F(image);
+
+                yield new CartridgeStandard(image, false);
+            }
+            case 0x8000 -> {
+                if(isProbablySC(image)) yield new CartridgeStandard(image, true);
+                if(isProbably3F(image)) yield new Cartridge3F(image);
+
+                yield new CartridgeStandard(image, false);
+            }
+            default -> {
+                if(size % Cartridge3F.BANK_SIZE == 0 && isProbably3F(image)) {
+                    yield new Cartridge3F(image);
+                }
+
+                throw new IllegalArgumentException(
+                        "Unsupported cartridge of " + size + " bytes"
+                );
+            }
+        };
+    }
+
+    /** In Superchip images, the RAM ports of every bank repeat a copy. */
+    private static boolean isProbablySC(byte[] image) {
+        for(int bank = 0; bank < image.length; bank += WINDOW) {
+            if(!Arrays.equals(image, bank, bank + 0x80,
+                    image, bank + 0x80, bank + 0x100)) return false;
+        }
+
+        return true;
+    }
+
+    private static boolean isProbablyF8(byte[] image) {
+        return count(image, 0x8D, 0xF9, 0x1F) >= 2     // STA $1FF9
+                || count(image, 0x8D, 0xF9, 0xFF) >= 2; // STA $FFF9
+    }
+
+    private static boolean isProbablyE0(byte[] image) {
+        return any(image, new int[][] {
+            {0x8D, 0xE0, 0x1F},     // STA $1FE0
+            {0x8D, 0xE0, 0x5F},     // STA $5FE0
+            {0x8D, 0xE9, 0xFF},     // STA $FFE9
+            {0x0C, 0xE0, 0x1F},     // NOP $1FE0
+            {0xAD, 0xE0, 0x1F},     // LDA $1FE0
+            {0xAD, 0xE9, 0xFF},     // LDA $FFE9
+            {0xAD, 0xED, 0xFF},     // LDA $FFED
+            {0xAD, 0xF3, 0xBF}      // LDA $BFF3
+        });
+    }
+
+    private static boolean isProbablyE7(byte[] image) {
+        return any(image, new int[][] {
+            {0xAD, 0xE2, 0xFF},     // LDA $FFE2
+            {0xAD, 0xE5, 0xFF},     // LDA $FFE5
+            {0xAD, 0xE5, 0x1F},     // LDA $1FE5
+            {0xAD, 0xE7, 0x1F},     // LDA $1FE7
+            {0x0C, 0xE7, 0x1F},     // NOP $1FE7
+            {0x8D, 0xE7, 0xFF},     // STA $FFE7
+            {0x8D, 0xE7, 0x1F}      // STA $1FE7
+        });
+    }
+
+    private static boolean isProbablyFE(byte[] image) {
+        return any(image, new int[][] {
+            {0x20, 0x00, 0xD0, 0xC6, 0xC5},     // JSR $D000; DEC $C5
+            {0x20, 0xC3, 0xF8, 0xA5, 0x82},     // JSR $F8C3; LDA $82
+            {0xD0, 0xFB, 0x20, 0x73, 0xFE},     // BNE $FB; JSR $FE73
+            {0x20, 0x00, 0xF0, 0x84, 0xD6}      // JSR $F000; STY $D6
+        });
+    }
+
+    private static boolean isProbably3F(byte[] image) {
+        // one bank switch out of every bank, at least
+        return count(image, 0x85, 0x3F) >= 2;  // STA $3F
+    }
+
+    private static boolean any(byte[] image, int[][] signatures) {
+        for(int[] s : signatures) {
+            if(count(image, s) > 0) return true;
+        }
+
+        return false;
+    }
+
+    private static int count(byte[] image, int... signature) {
+        int n = 0;
+
+        outer:
+        for(int i = 0; i <= image.length - signature.length; i++) {
+            for(int j = 0; j < signature.length; j++) {
+                if((image[i + j] & 0xFF) != signature[j]) continue outer;
+            }
+
+            n++;
+        }
+
+        return n;
+    }
+
+    /**
+     * @return the name of the bank switching scheme, like "F8SC"
+     */
+    public abstract String getName();
+
+    @Override
+    public int read(int addr) {
+        int a = addr & (WINDOW - 1);
+        int page = a >>> PAGE_SHIFT;
+
+        if((hot >>> page & 1) != 0) return readHot(a);
+
+        return readPages[page].read(readBases[page] | a & OFFSET);
+    }
+
+    @Override
+    public void write(int addr, int v) {
+        int a = addr & (WINDOW - 1);
+        int page = a >>> PAGE_SHIFT;
+
+        if((hot >>> page & 1) != 0) writeHot(a, v);
+        else writeMapped(a, v);
+    }
+
+    @Override
+    public int peek(int addr) {
+        return readMapped(addr & (WINDOW - 1));
+    }
+
+    /**
+     * A read of a hot page. By default, {@link #hotspot(int)} then the
+     * byte mapped there.
+     *
+     * @param addr offset in the window
+     * @return
+     */
+    protected int readHot(int addr) {
+        hotspot(addr);
+
+        return readMapped(addr);
+    }
+
+    /**
+     * A write to a hot page. By default, {@link #hotspot(int)} then a write
+     * to the RAM mapped there, if any.
+     *
+     * @param addr offset in the window
+     * @param v
+     */
+    protected void writeHot(int addr, int v) {
+        hotspot(addr);
+        writeMapped(addr, v);
+    }
+
+    /**
+     * An access to a hot page, read or write.
+     *
+     * @param addr offset in the window
+     */
+    protected void hotspot(int addr) {
+    }
+
+    protected final int readMapped(int addr) {
+        int page = addr >>> PAGE_SHIFT;
+
+        return readPages[page].read(readBases[page] | addr & OFFSET);
+    }
+
+    protected final void writeMapped(int addr, int v) {
+        int page = addr >>> PAGE_SHIFT;
+
+        var mem = writePages[page];
+        if(mem != null) mem.write(writeBases[page] | addr & OFFSET, v);
+    }
+
+    /**
+     * Maps length bytes of the window from addr to mem from base, for
+     * reads and writes.
+     */
+    protected final void map(int addr, int length, Memory8 mem, int base) {
+        mapRead(addr, length, mem, base);
+
+        for(int a = addr; a < addr + length; a += PAGE_SIZE) {
+            writePages[a >>> PAGE_SHIFT] = mem;
+            writeBases[a >>> PAGE_SHIFT] = base + a - addr & mem.getCapacity() - 1;
+        }
+    }
+
+    /**
+     * Maps length bytes of the window from addr to mem from base, for
+     * reads only: writes there are ignored.
+     */
+    protected final void mapRead(int addr, int length, Memory8 mem, int base) {
+        for(int a = addr; a < addr + length; a += PAGE_SIZE) {
+            readPages[a >>> PAGE_SHIFT] = mem;
+            // smaller memories are mirrored
+            readBases[a >>> PAGE_SHIFT] = base + a - addr & mem.getCapacity() - 1;
+            writePages[a >>> PAGE_SHIFT] = null;
+        }
+
+        if(bus != null) bus.cartridgeSwitched(addr, length);
+    }
+
+    /**
+     * Sends the accesses to length bytes of the window from addr through
+     * {@link #readHot(int)} and {@link #writeHot(int, int)}.
+     */
+    protected final void setHot(int addr, int length) {
+        for(int a = addr; a < addr + length; a += PAGE_SIZE) {
+            hot |= 1 << (a >>> PAGE_SHIFT);
+        }
+    }
+
+    /**
+     * @param addr
+     * @return the memory mapped at addr for reads, or null if addr is hot
+     */
+    public Memory memoryAt(int addr) {
+        int page = (addr & (WINDOW - 1)) >>> PAGE_SHIFT;
+
+        return (hot >>> page & 1) != 0 ? null : readPages[page];
+    }
+
+    public int memoryOffset(int addr) {
+        int a = addr & (WINDOW - 1);
+        int page = a >>> PAGE_SHIFT;
+
+        return readBases[page] | a & OFFSET;
+    }
+
+    public boolean isROM(int addr) {
+        return memoryAt(addr) == rom;
+    }
+
+    public Memory8 getROM() {
+        return rom;
+    }
+
+    /**
+     * @return the RAM on the cartridge, or null
+     */
+    public Memory8 getRAM() {
+        return null;
+    }
+
+    /**
+     * Whether the cartridge reacts to writes to the TIA at $00-$3F, which
+     * the bus then forwards to {@link #writeTIA(int, int)}.
+     *
+     * @return
+     */
+    protected boolean watchesTIA() {
+        return false;
+    }
+
+    /**
+     * A write to the TIA at $00-$3F, seen by the cartridge too.
+     *
+     * @param addr
+     * @param v
+     */
+    protected void writeTIA(int addr, int v) {
+    }
+
+    void attach(Atari2600Bus bus) {
+        this.bus = bus;
+    }
+
+    /**
+     * The cycle to {@link #sync(long)} to, for cartridges that keep time: 
+     * the bus only synchronizes the TIA and the RIOT, so they do it on
+     * accesses to their hot pages.
+     *
+     * @return the CPU cycle of the access in progress
+     */
+    protected final long cycle() {
+        return bus == null ? 0 : bus.cycle();
+    }
+
+    @Override public void tick() {}
+
+    @Override public void tick(int cycles) {}
+}
@@ -8,14 +8,51 @@
 package com.fractalino.atarizator.emulate.atari;
 
 import com.fractalino.atarizator.emulate.Memory8;
+import com.fractalino.atarizator.emulate.Scheduler;
 
 /**
+ * The 6532 RAM-I/O-Timer.
+ *
+ * The interval timer doesn't count: INTIM and TIMINT are worked out on
+ * read from the cycle TIM1T, TIM8T, TIM64T or T1024T was written, the
+ * value written and the prescaler, like Stella does. INTIM reads the value
+ * during the cycle of the write, one less from the next cycle, and one 
+ * less again every interval after that. Once it underflows, value * 
+ * interval + 1 cycles after the write, it counts down 1 per cycle from $FF
+ * and sets the flag of TIMINT, which a read of INTIM clears. Its expiry is
+ * a scheduler event, so that the CPU doesn't idle over it; while INTIM is
+ * polled, so is its next change.
+ *
+ * The cycle of a read or write is the one the bus is synchronized to, the
+ * start of the instruction, not the cycle of its bus access: 3 cycles
+ * early for an absolute STA or LDA. So the timer is exact only to the
+ * instruction start. Writes and reads are early alike, so the count 
+ * between a write and a read in the same addressing mode is exact.
  *
  * @author fractalino
  */
 public class Atari2600RIOT {
+    /** Prescaler shifts of TIM1T, TIM8T, TIM64T and T1024T. */
+    private static final int[] SHIFTS = {0, 0x3, 0x6, 0xA};
+    
+    private static final int TIMER_FLAG = 0x80;
+    
     private final Memory8 ram = new Memory8(128);
     
+    /** CPU cycle the RIOT was last synchronized to. */
+    private long synced = 0;
+    
+    // the timer powers on expired, as if 0 had been written to T1024T
+    /** CPU cycle the timer was written, the value and the prescaler. */
+    private long written = -1;
+    private int value = 0;
+    private int shift = SHIFTS[3];
+    /** CPU cycle INTIM was last read. */
+    private long acknowledged = -1;
+    
+    private Scheduler scheduler = null;
+    private int slot;
+    
     public int readRAM(int addr) {
         // RAM is at $0080-$00FF.
         return ram.read(addr & 0x7F);
@@ -26,16 +63,112 @@ public class Atari2600RIOT {
     }
     
     public int readIO(int addr) {
-        // TODO: Timers and Joystick switches
-        return 0;
+        // TODO: Joystick and console switches
+        if((addr & 0x04) == 0) return 0;
+        
+        if((addr & 0x01) != 0) return timint(synced);
+        
+        // INTIM: reading it clears the flag
+        int v = intim(synced);
+        acknowledged = synced;
+        
+        // the loop polling it must see it change
+        if(synced < expiry()) schedule(nextChange(synced));
+        
+        return v;
+    }
+    
+    /**
+     * {@link #readIO(int)} without side effects.
+     *
+     * @param addr
+     * @return
+     */
+    public int peekIO(int addr) {
+        if((addr & 0x04) == 0) return 0;
+        
+        return (addr & 0x01) != 0 ? timint(synced) : intim(synced);
+    }
+    
+    /**
+     * @param addr
+     * @return whether INTIM is read at addr after the underflow, when it 
+     *         counts down every cycle without scheduling it
+     */
+    public boolean isVolatile(int addr) {
+        return (addr & 0x05) == 0x04 && synced >= expiry();
     }
     
     public void writeIO(int addr, int val) {
-        // TODO: Timer settings
+        // TODO: I/O ports and edge detection
+        if((addr & 0x14) != 0x14) return;
+        
+        // TIM1T, TIM8T, TIM64T or T1024T; the 2600 has no IRQ to enable
+        written = synced;
+        value = val & 0xFF;
+        shift = SHIFTS[addr & 0x03];
+        acknowledged = -1;
+        
+        schedule(expiry());
     }
     
-    public void tick(int cycles) {
+    /**
+     * @return the CPU cycle the timer underflows, setting its flag
+     */
+    public long expiry() {
+        // the first decrement is on the cycle after the write
+        return written + 1 + ((long) value << shift);
+    }
+    
+    private int intim(long cycle) {
+        long t = expiry() - 1 - cycle;
+        
+        // after the underflow, it counts down 1 per cycle
+        return (int) (t >= 0 ? t >>> shift : t & 0xFF);
+    }
+    
+    private int timint(long cycle) {
+        long expiry = expiry();
+        
+        return cycle >= expiry && acknowledged < expiry ? TIMER_FLAG : 0;
+    }
+    
+    /** The first cycle after cycle INTIM reads one less, before expiry. */
+    private long nextChange(long cycle) {
+        long t = expiry() - 1 - cycle;
+        
+        return expiry() - (t >>> shift << shift);
+    }
+    
+    /**
+     * Runs the RIOT up to cycle.
+     *
+     * @param cycle
+     * @see com.fractalino.atarizator.emulate.Device#sync(long)
+     */
+    public void sync(long cycle) {
+        if(cycle <= synced) return;
         
+        synced = cycle;
+    }
+    
+    public void setScheduler(Scheduler scheduler) {
+        this.scheduler = scheduler;
+        this.slot = scheduler.register(this::onTimer);
+    }
+    
+    /**
+     * Nothing to do but end the batch of the CPU: after a change of INTIM,
+     * the expiry is next.
+     */
+    private void onTimer(long cycle) {
+        sync(cycle);
+        
+        if(cycle < expiry()) schedule(expiry());
+    }
+    
+    private void schedule(long cycle) {
+        if(scheduler != null) scheduler.schedule(slot, cycle);
     }
     
     public Memory8 getMemory() {
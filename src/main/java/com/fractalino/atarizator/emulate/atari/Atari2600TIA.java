@@ -12,6 +12,9 @@ package com.fractalino.atarizator.emulate.atari;
  * @author fractalino
  */
 public class Atari2600TIA {
+    /** CPU cycle the TIA was last synchronized to. */
+    private long synced = 0;
+    
     public int read(int addr) {
         return 0;
     }
@@ -19,7 +22,15 @@ public class Atari2600TIA {
     public void write(int addr, int val) {
     }
     
-    public void tick(int cycles) {
+    /**
+     * Runs the TIA, 3 color clocks per CPU cycle, up to cycle.
+     * 
+     * @param cycle 
+     * @see com.fractalino.atarizator.emulate.Device#sync(long) 
+     */
+    public void sync(long cycle) {
+        if(cycle <= synced) return;
         
+        synced = cycle;
     }
 }
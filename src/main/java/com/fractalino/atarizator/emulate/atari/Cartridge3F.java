@@ -0,0 +1,66 @@
+/*
+ *  Copyright (c) 2025/2026, fractalino
+ *
+ *  This file is part of Atarizator.
+ *  It is subject to the terms of the GNU General Public License v3.
+ *  For details, see the LICENSE file at the root of the project.
+ */
+package com.fractalino.atarizator.emulate.atari;
+
+/**
+ * Tigervision's 3F: banks of 2 KB. Writing n to the TIA at $00-$3F maps
+ * bank n at $1000-$17FF; $1800-$1FFF always shows the last bank.
+ *
+ * @author fractalino
+ */
+public class Cartridge3F extends Atari2600Cartridge {
+
+    static final int BANK_SIZE = 0x800;
+
+    private final int banks;
+
+    private int bank = -1;
+
+    public Cartridge3F(byte[] image) {
+        super(image);
+
+        this.banks = size / BANK_SIZE;
+        if(banks < 2 || size % BANK_SIZE != 0) {
+            throw new IllegalArgumentException(
+                    "3F cartridges are made of 2 KB banks"
+            );
+        }
+
+        mapRead(BANK_SIZE, BANK_SIZE, rom, (banks - 1) * BANK_SIZE);
+        bank(0);
+    }
+
+    @Override
+    protected boolean watchesTIA() {
+        return true;
+    }
+
+    @Override
+    protected void writeTIA(int addr, int v) {
+        bank((v & 0xFF) % banks);
+    }
+
+    private void bank(int b) {
+        if(b == bank) return;
+        bank = b;
+
+        mapRead(0, BANK_SIZE, rom, b * BANK_SIZE);
+    }
+
+    /**
+     * @return the bank mapped at $1000-$17FF
+     */
+    public int getBank() {
+        return bank;
+    }
+
+    @Override
+    public String getName() {
+        return "3F";
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ *  Copyright (c) 2025/2026, fractalino
+ *
+ *  This file is part of Atarizator.
+ *  It is subject to the terms of the GNU General Public License v3.
+ *  For details, see the LICENSE file at the root of the project.
+ */
+package com.fractalino.atarizator.emulate.atari;
+
+/**
+ * Activision's DPC, the Display Processor Chip of Pitfall II: 8 KB of
+ * program switched like F8, plus 2 KB of graphics read through 8 data
+ * fetchers, a random number generator and 3 music channels, with their
+ * registers at $1000-$107F.
+ *
+ * Fetcher n counts down from its counter through the graphics, and its
+ * flag turns on when the low byte of the counter reaches top and off when
+ * it reaches bottom. Fetchers 5-7 can instead run off the music oscillator,
+ * looping from top: they catch up with the CPU, in {@link #sync(long)}, on
+ * each access to the registers.
+ *
+ * @author fractalino
+ */
+public class CartridgeDPC extends Atari2600Cartridge {
+
+    static final int SIZE = 0x2800;
+
+    private static final int PROGRAM = 0x2000;
+    private static final int GRAPHICS = 0x800;
+
+    private static final int REGISTERS = 0x80;
+    private static final int HOTSPOTS = 0xFF8;
+
+    private static final long CPU_CLOCK = 1_193_182;
+    private static final long OSC_CLOCK = 20_000;
+
+    /** Output of the 3 music channels mixed: channel n is bit n. */
+    private static final int[] AMPLITUDES = {
+        0x00, 0x04, 0x05, 0x09, 0x06, 0x0A, 0x0B, 0x0F
+    };
+
+    private final int[] tops = new int[8];
+    private final int[] bottoms = new int[8];
+    private final int[] counters = new int[8];
+    private final int[] flags = new int[8];
+    private final boolean[] music = new boolean[3];
+
+    private int random = 1;
+
+    /** CPU cycle the music fetchers run to, and oscillator clocks left. */
+    private long synced = 0;
+    private long remainder = 0;
+
+    private int bank = -1;
+
+    public CartridgeDPC(byte[] image) {
+        super(image);
+
+        if(size < SIZE) {
+            throw new IllegalArgumentException("DPC cartridges are 10 KB");
+        }
+
+        setHot(0, REGISTERS);
+        setHot(HOTSPOTS, 2);
+
+        bank(1);
+    }
+
+    @Override
+    protected int readHot(int addr) {
+        sync(cycle());
+        clockRandom();
+
+        if(addr >= 0x40) {
+            if(addr >= HOTSPOTS && addr < HOTSPOTS + 2) bank(addr - HOTSPOTS);
+
+            return readMapped(addr);
+        }
+
+        int n = addr & 7;
+        int low = counters[n] & 0xFF;
+
+        if(low == tops[n]) flags[n] = 0xFF;
+        else if(low == bottoms[n]) flags[n] = 0x00;
+
+        int v = switch(addr >>> 3) {
+            case 0 -> n < 4 ? random : amplitude();
+            case 1 -> graphics(n);
+            case 2 -> graphics(n) & flags[n];
+            case 7 -> flags[n];
+            default -> 0;
+        };
+
+        if(n < 5 || !music[n - 5]) counters[n] = (counters[n] - 1) & 0x7FF;
+
+        return v;
+    }
+
+    @Override
+    protected void writeHot(int addr, int v) {
+        sync(cycle());
+        clockRandom();
+
+        if(addr < 0x40 || addr >= REGISTERS) {
+            if(addr >= HOTSPOTS && addr < HOTSPOTS + 2) bank(addr - HOTSPOTS);
+
+            return;
+        }
+
+        int n = addr & 7;
+        v &= 0xFF;
+
+        switch((addr >>> 3) & 7) {
+            case 0 -> {
+                tops[n] = v;
+                flags[n] = 0x00;
+            }
+            case 1 -> bottoms[n] = v;
+            case 2 -> {
+                // in music mode the counter reloads from top
+                int low = n >= 5 && music[n - 5] ? tops[n] : v;
+                counters[n] = counters[n] & 0x700 | low;
+            }
+            case 3 -> {
+                counters[n] = (v & 7) << 8 | counters[n] & 0xFF;
+                if(n >= 5) music[n - 5] = (v & 0x10) != 0;
+            }
+            case 6 -> random = 1;
+            default -> {
+            }
+        }
+    }
+
+    private int graphics(int n) {
+        return rom.read(PROGRAM + GRAPHICS - 1 - counters[n]);
+    }
+
+    private int amplitude() {
+        int i = 0;
+        for(int c = 0; c < 3; c++) {
+            if(music[c] && flags[5 + c] != 0) i |= 1 << c;
+        }
+
+        return AMPLITUDES[i];
+    }
+
+    /** Runs the music fetchers to cycle. */
+    @Override
+    public void sync(long cycle) {
+        if(cycle <= synced) return;
+
+        long clocks = (cycle - synced) * OSC_CLOCK + remainder;
+        synced = cycle;
+        remainder = clocks % CPU_CLOCK;
+
+        long whole = clocks / CPU_CLOCK;
+        if(whole == 0) return;
+
+        for(int n = 5; n < 8; n++) {
+            if(!music[n - 5]) continue;
+
+            int low = counters[n] & 0xFF;
+            if(tops[n] != 0) {
+                low -= (int) (whole % (tops[n] + 1));
+                if(low < 0) low += tops[n] + 1;
+            } else {
+                low = 0;
+            }
+
+            if(low <= bottoms[n]) flags[n] = 0x00;
+            else if(low <= tops[n]) flags[n] = 0xFF;
+
+            counters[n] = counters[n] & 0x700 | low;
+        }
+    }
+
+    /** An 8-bit LFSR, taps 7, 5, 4 and 3. */
+    private void clockRandom() {
+        int bit = ~(random >>> 7 ^ random >>> 5 ^ random >>> 4 ^ random >>> 3) & 1;
+        random = (random << 1 | bit) & 0xFF;
+    }
+
+    private void bank(int b) {
+        if(b == bank) return;
+        bank = b;
+
+        mapRead(0, WINDOW, rom, b * WINDOW);
+    }
+
+    /**
+     * @return the bank of program mapped in the window
+     */
+    public int getBank() {
+        return bank;
+    }
+
+    @Override
+    void attach(Atari2600Bus bus) {
+        super.attach(bus);
+
+        // the oscillator starts when the cartridge is inserted
+        synced = cycle();
+    }
+
+    @Override
+    public String getName() {
+        return "DPC";
+    }
+}
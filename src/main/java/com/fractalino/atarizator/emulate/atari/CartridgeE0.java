@@ -0,0 +1,63 @@
+/*
+ *  Copyright (c) 2025/2026, fractalino
+ *
+ *  This file is part of Atarizator.
+ *  It is subject to the terms of the GNU General Public License v3.
+ *  For details, see the LICENSE file at the root of the project.
+ */
+package com.fractalino.atarizator.emulate.atari;
+
+/**
+ * Parker Brothers' E0: 8 banks of 1 KB. The first three slices of the
+ * window are switched by accesses to $1FE0-$1FE7, $1FE8-$1FEF and
+ * $1FF0-$1FF7 respectively; the last one always shows bank 7.
+ *
+ * @author fractalino
+ */
+public class CartridgeE0 extends Atari2600Cartridge {
+
+    private static final int SLICE = 0x400;
+    private static final int HOTSPOTS = 0xFE0;
+
+    private final int[] slices = {-1, -1, -1};
+
+    public CartridgeE0(byte[] image) {
+        super(image);
+
+        if(size != 0x2000) {
+            throw new IllegalArgumentException("E0 cartridges are 8 KB");
+        }
+
+        mapRead(3 * SLICE, SLICE, rom, 7 * SLICE);
+        setHot(HOTSPOTS, 3 * 8);
+
+        for(int s = 0; s < slices.length; s++) bank(s, 4 + s);
+    }
+
+    @Override
+    protected void hotspot(int addr) {
+        if(addr >= HOTSPOTS && addr < HOTSPOTS + 3 * 8) {
+            bank((addr - HOTSPOTS) >>> 3, addr & 7);
+        }
+    }
+
+    private void bank(int slice, int b) {
+        if(slices[slice] == b) return;
+        slices[slice] = b;
+
+        mapRead(slice * SLICE, SLICE, rom, b * SLICE);
+    }
+
+    /**
+     * @param slice 0 to 3
+     * @return the bank mapped in slice
+     */
+    public int getBank(int slice) {
+        return slice < slices.length ? slices[slice] : 7;
+    }
+
+    @Override
+    public String getName() {
+        return "E0";
+    }
+}
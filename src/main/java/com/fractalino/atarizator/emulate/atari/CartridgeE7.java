@@ -0,0 +1,100 @@
+/*
+ *  Copyright (c) 2025/2026, fractalino
+ *
+ *  This file is part of Atarizator.
+ *  It is subject to the terms of the GNU General Public License v3.
+ *  For details, see the LICENSE file at the root of the project.
+ */
+package com.fractalino.atarizator.emulate.atari;
+
+import com.fractalino.atarizator.emulate.Memory8;
+
+/**
+ * M Network's E7: 8 banks of 2 KB and 2 KB of RAM.
+ * <ul>
+ * <li>$1000-$17FF shows one of banks 0-6, selected by an access to
+ * $1FE0-$1FE6, or, after $1FE7, 1 KB of RAM written at $1000-$13FF and
+ * read at $1400-$17FF.</li>
+ * <li>$1800-$19FF shows one of 4 pages of 256 bytes of RAM, selected by
+ * $1FE8-$1FEB, written at $1800-$18FF and read at $1900-$19FF.</li>
+ * <li>$1A00-$1FFF always shows the end of bank 7.</li>
+ * </ul>
+ *
+ * @author fractalino
+ */
+public class CartridgeE7 extends Atari2600Cartridge {
+
+    private static final int BANK_SIZE = 0x800;
+    private static final int RAM_BANK = 7;
+    private static final int HOTSPOTS = 0xFE0;
+
+    /** The 1 KB bank, then the 4 pages of 256 bytes. */
+    private final Memory8 ram = new Memory8(0x800);
+
+    private int bank = -1;
+    private int ramPage = -1;
+
+    public CartridgeE7(byte[] image) {
+        super(image);
+
+        if(size != 0x4000) {
+            throw new IllegalArgumentException("E7 cartridges are 16 KB");
+        }
+
+        mapRead(0xA00, 0x600, rom, 7 * BANK_SIZE + 0x200);
+        setHot(HOTSPOTS, 12);
+
+        bank(0);
+        ramPage(0);
+    }
+
+    @Override
+    protected void hotspot(int addr) {
+        if(addr >= HOTSPOTS && addr < HOTSPOTS + 8) bank(addr & 7);
+        else if(addr >= HOTSPOTS + 8 && addr < HOTSPOTS + 12) ramPage(addr & 3);
+    }
+
+    private void bank(int b) {
+        if(b == bank) return;
+        bank = b;
+
+        if(b == RAM_BANK) {
+            map(0x000, 0x400, ram, 0);
+            mapRead(0x400, 0x400, ram, 0);
+        } else {
+            mapRead(0x000, BANK_SIZE, rom, b * BANK_SIZE);
+        }
+    }
+
+    private void ramPage(int p) {
+        if(p == ramPage) return;
+        ramPage = p;
+
+        map(0x800, 0x100, ram, 0x400 + p * 0x100);
+        mapRead(0x900, 0x100, ram, 0x400 + p * 0x100);
+    }
+
+    /**
+     * @return the bank mapped at $1000-$17FF, 7 for RAM
+     */
+    public int getBank() {
+        return bank;
+    }
+
+    /**
+     * @return the page of RAM mapped at $1800-$19FF
+     */
+    public int getRAMPage() {
+        return ramPage;
+    }
+
+    @Override
+    public Memory8 getRAM() {
+        return ram;
+    }
+
+    @Override
+    public String getName() {
+        return "E7";
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ *  Copyright (c) 2025/2026, fractalino
+ *
+ *  This file is part of Atarizator.
+ *  It is subject to the terms of the GNU General Public License v3.
+ *  For details, see the LICENSE file at the root of the project.
+ */
+package com.fractalino.atarizator.emulate.atari;
+
+import com.fractalino.atarizator.emulate.Memory;
+
+/**
+ * Activision's FE: 2 banks of 4 KB, the first one assembled at $F000 and the
+ * second at $D000.
+ *
+ * The 6507 has no A13, so the cartridge watches the data bus after the
+ * stack accesses at $01FE of JSR and RTS, where it finds the high byte of
+ * the new PC, and maps the bank that code was assembled for. The bus here
+ * still gets 16-bit addresses, whose A13 is the same bit: the bank is
+ * decoded from it, so code caches see a plain mapping and no switch ever
+ * has to be notified.
+ *
+ * @author fractalino
+ */
+public class CartridgeFE extends Atari2600Cartridge {
+
+    private static final int A13 = 0x2000;
+
+    public CartridgeFE(byte[] image) {
+        super(image);
+
+        if(size != 0x2000) {
+            throw new IllegalArgumentException("FE cartridges are 8 KB");
+        }
+    }
+
+    private static int offset(int addr) {
+        return ((addr & A13) != 0 ? 0 : WINDOW) | addr & (WINDOW - 1);
+    }
+
+    @Override
+    public int read(int addr) {
+        return rom.read(offset(addr));
+    }
+
+    @Override
+    public void write(int addr, int v) {
+    }
+
+    @Override
+    public int peek(int addr) {
+        return rom.peek(offset(addr));
+    }
+
+    @Override
+    public Memory memoryAt(int addr) {
+        return rom;
+    }
+
+    @Override
+    public int memoryOffset(int addr) {
+        return offset(addr);
+    }
+
+    /**
+     * @param addr a 16-bit address
+     * @return the bank mapped at addr
+     */
+    public int getBank(int addr) {
+        return offset(addr) / WINDOW;
+    }
+
+    @Override
+    public String getName() {
+        return "FE";
+    }
+}
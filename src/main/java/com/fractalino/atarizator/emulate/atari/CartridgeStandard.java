@@ -0,0 +1,102 @@
+/*
+ *  Copyright (c) 2025/2026, fractalino
+ *
+ *  This file is part of Atarizator.
+ *  It is subject to the terms of the GNU General Public License v3.
+ *  For details, see the LICENSE file at the root of the project.
+ */
+package com.fractalino.atarizator.emulate.atari;
+
+import com.fractalino.atarizator.emulate.Memory8;
+
+/**
+ * Atari's own schemes: 2K and 4K, without banks, and F8, F6 and F4, which
+ * switch the whole window among 2, 4 or 8 banks of 4 KB on an access to
+ * $1FF8, $1FF6 or $1FF4 and following.
+ *
+ * Superchip (SC) variants add 128 bytes of RAM, written at $1000-$107F and
+ * read at $1080-$10FF.
+ *
+ * @author fractalino
+ */
+public class CartridgeStandard extends Atari2600Cartridge {
+
+    private final int banks;
+    /** Hotspot of bank 0. */
+    private final int first;
+    private final Memory8 ram;
+
+    private int bank = -1;
+
+    /**
+     * @param image of 4 KB at most, or of 8, 16 or 32 KB
+     * @param superchip whether there is Superchip RAM
+     */
+    public CartridgeStandard(byte[] image, boolean superchip) {
+        super(image);
+
+        this.banks = Math.max(size / WINDOW, 1);
+        this.first = switch(banks) {
+            case 1 -> WINDOW;
+            case 2 -> 0xFF8;
+            case 4 -> 0xFF6;
+            case 8 -> 0xFF4;
+            default -> throw new IllegalArgumentException(
+                    "Unsupported cartridge of " + size + " bytes"
+            );
+        };
+        if(banks > 1 && size % WINDOW != 0) {
+            throw new IllegalArgumentException(
+                    "Unsupported cartridge of " + size + " bytes"
+            );
+        }
+
+        this.ram = superchip ? new Memory8(128) : null;
+        if(ram != null) {
+            map(0x000, 0x80, ram, 0);
+            mapRead(0x080, 0x80, ram, 0);
+        }
+
+        if(banks > 1) setHot(first, banks);
+
+        // the power-on bank is random: games can reset from any of them
+        bank(banks - 1);
+    }
+
+    @Override
+    protected void hotspot(int addr) {
+        if(addr >= first && addr < first + banks) bank(addr - first);
+    }
+
+    private void bank(int b) {
+        if(b == bank) return;
+        bank = b;
+
+        int from = ram != null ? 0x100 : 0;
+        mapRead(from, WINDOW - from, rom, b * WINDOW + from);
+    }
+
+    /**
+     * @return the bank mapped in the window
+     */
+    public int getBank() {
+        return bank;
+    }
+
+    @Override
+    public Memory8 getRAM() {
+        return ram;
+    }
+
+    @Override
+    public String getName() {
+        String name = switch(banks) {
+            case 1 -> size <= 0x800 ? "2K" : "4K";
+            case 2 -> "F8";
+            case 4 -> "F6";
+            default -> "F4";
+        };
+
+        return ram != null ? name + "SC" : name;
+    }
+}
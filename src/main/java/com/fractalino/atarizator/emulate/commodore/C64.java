@@ -16,17 +16,62 @@ import com.fractalino.atarizator.emulate.MOS6502;
  */
 public class C64 extends Computer<C64Bus, MOS6502<C64Bus>> {
 
-    public C64() {
-        this(new C64Bus());
+    public C64(MOS6502.Feature... features) {
+        this(new C64Bus(), features);
     }
     
-    private C64(C64Bus bus) {
-        super(bus, new MOS6502<>(bus));
+    private C64(C64Bus bus, MOS6502.Feature... features) {
+        super(bus, new MOS6502<>(bus, features));
+        
+        bus.setCPU(cpu);
     }
     
     @Override
     public void step() {
-        // TODO
+        masterCycle += cpu.step();
+        
+        scheduler.run(masterCycle);
+        masterCycle += interrupts();
+    }
+    
+    @Override
+    public long runCycles(long budget) {
+        long start = masterCycle;
+        long end = start + budget;
+        
+        scheduler.run(masterCycle);
+        masterCycle += interrupts();
+        
+        while(masterCycle < end) {
+            // a masked IRQ is taken as soon as I is clear: while it is 
+            // held, the CPU goes one instruction at a time, without 
+            // entering translated blocks or fused chains
+            long cycles = cpu.runCycles(bus.isIRQ() && cpu.isIRQMasked()
+                    ? 1
+                    : Math.min(end, scheduler.next()) - masterCycle);
+            if(cycles == 0) break;
+            
+            masterCycle += cycles;
+            
+            scheduler.run(masterCycle);
+            masterCycle += interrupts();
+        }
+        
+        return masterCycle - start;
+    }
+    
+    /**
+     * Takes the interrupts the chips raised, between instructions.
+     * 
+     * @return the cycles of the interrupt sequences
+     */
+    private int interrupts() {
+        long before = cpu.getCycles();
+        
+        if(bus.takeNMI()) cpu.nmi();
+        if(bus.isIRQ()) cpu.irq();
+        
+        return (int) (cpu.getCycles() - before);
     }
 
     @Override
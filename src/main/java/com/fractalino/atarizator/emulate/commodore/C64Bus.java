@@ -1,9 +1,16 @@
 package com.fractalino.atarizator.emulate.commodore;
 
+import com.fractalino.atarizator.emulate.BankSwitchListener;
 import com.fractalino.atarizator.emulate.Bus;
+import com.fractalino.atarizator.emulate.Device;
 import com.fractalino.atarizator.emulate.MOS6502;
 import com.fractalino.atarizator.emulate.Memory;
 import com.fractalino.atarizator.emulate.Memory8;
+import com.fractalino.atarizator.emulate.Scheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongSupplier;
 
 /**
  *
@@ -18,103 +25,307 @@ public class C64Bus implements Bus {
     private final Memory8 kernalRom = new Memory8(8192);
     private final Memory8 charRom   = new Memory8(4096);
     
-    private final MOS6502 cpu;
+    private MOS6502<C64Bus> cpu = null;
     private final VIC2 vic  = new VIC2();
     private final SID  sid  = new SID();
     private final CIA  cia1;
     private final CIA  cia2;
     
+    private final List<BankSwitchListener> bsls = new ArrayList<>(1);
+    
+    private static final int PAGES = 256;
+    
+    /** Port bits read as 1 when set as inputs: LORAM, HIRAM, CHAREN and 
+     *  the cassette sense. */
+    private static final int PORT_PULL_UPS = 0x17;
+    
+    /** The expansion pages $DE00-$DFFF: unconnected, read as $FF. */
+    private static final Device OPEN = new Device() {
+        @Override
+        public int read(int addr) {
+            return 0xFF;
+        }
+
+        @Override
+        public void write(int addr, int v) {
+        }
+
+        @Override
+        public void tick() {
+        }
+    };
+    
+    /** Page 0: the 6510 port at $00/$01 over RAM. */
+    private final Device zeroPage = new Device() {
+        @Override
+        public int read(int addr) {
+            return switch(addr) {
+                case 0  -> portDirection;
+                case 1  -> (portData & portDirection 
+                        | PORT_PULL_UPS & ~portDirection) & 0xFF;
+                default -> dram.read(addr);
+            };
+        }
+
+        @Override
+        public void write(int addr, int v) {
+            // the RAM below the port is written too
+            dram.write(addr, v);
+            
+            if(addr == 0) {
+                portDirection = v & 0xFF;
+                remap();
+            } else if(addr == 1) {
+                portData = v & 0xFF;
+                remap();
+            }
+        }
+
+        @Override
+        public void tick() {
+        }
+    };
+    
+    // page tables: a page's handler is called with addr - base. Pages of
+    // memory are also kept apart, so the common case is not a megamorphic 
+    // call through Device
+    private final Device[] readers = new Device[PAGES];
+    private final Memory[] readMemories = new Memory[PAGES];
+    private final int[] readBases = new int[PAGES];
+    private final Device[] writers = new Device[PAGES];
+    private final Memory[] writeMemories = new Memory[PAGES];
+    private final int[] writeBases = new int[PAGES];
+    /** Pages of the chips, synchronized before each access. */
+    private final boolean[] timed = new boolean[PAGES];
+    
+    /** CPU cycles, to which the chips catch up when they are accessed. */
+    private LongSupplier clock = () -> 0;
+    /** An NMI edge not taken yet: RESTORE is pressed on the GUI thread. */
+    private volatile boolean nmi = false;
+    
     private int portDirection = 0xFF;
     private int portData = 0x27;
+    /** LORAM, HIRAM and CHAREN as seen by the PLA, -1 before mapping. */
+    private int lines = -1;
     
     C64Bus() {
-        cpu  = new MOS6502(this);
         cia1 = new CIA(this, CIA.CIAID.CIA1);
         cia2 = new CIA(this, CIA.CIAID.CIA2);
+        
+        remap();
     }
     
     @Override
     public int read(int addr) {
-        if (addr >= 0xE000) {
-            if ((portData & 0x02) == 0x02) {
-                // if KERNAL is hidden by RAM, read RAM.
-                return dram.read(addr); 
-            }
-            
-            return kernalRom.read(addr - 0xE000);
-        }
+        addr &= 0xFFFF;
+        int page = addr >>> 8;
         
-        if (addr >= 0xD000 && addr <= 0xDFFF) {
-            int bits = portData & 0x06;
+        var mem = readMemories[page];
+        if(mem != null) return mem.read(addr - readBases[page]);
+        
+        var dev = readers[page];
+        if(timed[page]) dev.sync(clock.getAsLong());
+        
+        return dev.read(addr - readBases[page]);
+    }
 
-            return switch (bits) {
-                case 0b00: // Bits 2, 1 = 0, 0 (I/O + KERNAL)
-                    yield readIO(addr);
-                case 0b10: // Bits 2, 1 = 1, 0 (char ROM + KERNAL)
-                    yield charRom.read(addr - 0xD000);
-                case 0b11: // Bits 2, 1 = 1, 1 (RAM + RAM)
-                    yield dram.read(addr);
-                default:
-                    yield readIO(addr);
-            };
-        }
+    @Override
+    public int peek(int addr) {
+        addr &= 0xFFFF;
+        int page = addr >>> 8;
         
-        if (addr >= 0xA000 && addr <= 0xBFFF) {
-            if ((portData & 0x01) == 0x00) { 
-                return basicRom.read(addr - 0xA000);
-            }
+        return readers[page].peek(addr - readBases[page]);
+    }
+    
+    @Override
+    public void peekRange(int addr, byte[] dst, int offset, int length) {
+        while(length > 0) {
+            addr &= 0xFFFF;
+            int page = addr >>> 8;
+            int n = Math.min(length, 0x100 - (addr & 0xFF));
+            
+            readers[page].peekRange(addr - readBases[page], dst, offset, n);
             
-            return dram.read(addr);
+            addr += n;
+            offset += n;
+            length -= n;
         }
-    
-        // low RAM ($0000 - $9FFF)
-        return dram.read(addr);
     }
 
     @Override
     public void write(int addr, int val) {
-        if (addr >= 0xE000) {
-            if ((portData & 0x02) == 0x02) {
-                // if KERNAL is hidden by RAM, read RAM.
-                dram.write(addr, val); 
+        addr &= 0xFFFF;
+        int page = addr >>> 8;
+        
+        var mem = writeMemories[page];
+        if(mem != null) {
+            mem.write(addr - writeBases[page], val);
+            return;
+        }
+        
+        var dev = writers[page];
+        if(timed[page]) dev.sync(clock.getAsLong());
+        
+        dev.write(addr - writeBases[page], val);
+    }
+    
+    /**
+     * The chips, which change with time. The port and the expansion pages
+     * only change on writes.
+     */
+    @Override
+    public boolean isVolatile(int addr) {
+        return timed[addr >>> 8 & 0xFF];
+    }
+    
+    @Override
+    public void setClock(LongSupplier clock) {
+        this.clock = clock;
+    }
+    
+    @Override
+    public void setScheduler(Scheduler scheduler) {
+        cia1.setScheduler(scheduler);
+        cia2.setScheduler(scheduler);
+    }
+    
+    /**
+     * @param cpu the CPU the interrupts go to
+     */
+    void setCPU(MOS6502<C64Bus> cpu) {
+        this.cpu = cpu;
+    }
+    
+    /**
+     * Rebuilds the page tables after a write to the 6510 port, if the lines
+     * it drives changed, and notifies the bank switch listeners.
+     * 
+     * Without a cartridge: BASIC is visible with LORAM and HIRAM, KERNAL 
+     * with HIRAM, and $D000-$DFFF shows I/O with CHAREN or the character 
+     * ROM without it, unless LORAM and HIRAM are both low. Writes go to the
+     * RAM below ROMs.
+     */
+    private void remap() {
+        int now = (portData | ~portDirection) & 0x07;
+        if(now == lines) return;
+        
+        boolean first = lines < 0;
+        lines = now;
+        
+        boolean loram  = (now & 0x01) != 0;
+        boolean hiram  = (now & 0x02) != 0;
+        boolean charen = (now & 0x04) != 0;
+        
+        map(0x0000, 0x10000, dram, 0);
+        readers[0] = writers[0] = zeroPage;
+        readMemories[0] = writeMemories[0] = null;
+        
+        if(loram && hiram) mapRead(0xA000, 0x2000, basicRom, 0xA000);
+        if(hiram) mapRead(0xE000, 0x2000, kernalRom, 0xE000);
+        
+        if(loram || hiram) {
+            if(charen) {
+                map(0xD000, 0x400, vic,  0xD000);
+                map(0xD400, 0x400, sid,  0xD400);
+                map(0xD800, 0x400, cram, 0xD800);
+                map(0xDC00, 0x100, cia1, 0xDC00);
+                map(0xDD00, 0x100, cia2, 0xDD00);
+                map(0xDE00, 0x200, OPEN, 0xDE00);
+            } else {
+                mapRead(0xD000, 0x1000, charRom, 0xD000);
             }
-            
-            kernalRom.write(addr - 0xE000, val);
         }
         
-        if (addr >= 0xD000 && addr <= 0xDFFF) {
-            int bits = portData & 0x06;
-
-            switch (bits) {
-                case 0b00: // Bits 2, 1 = 0, 0 (I/O + KERNAL)
-                    writeIO(addr, val);
-                case 0b10: // Bits 2, 1 = 1, 0 (char ROM + KERNAL)
-                    charRom.write(addr - 0xD000, val);
-                case 0b11: // Bits 2, 1 = 1, 1 (RAM + RAM)
-                    dram.write(addr, val);
-                default:
-                    writeIO(addr, val);
-            };
+        if(!first) {
+            for(var bsl : bsls) bsl.onBankSwitch();
         }
+    }
+    
+    private void map(int addr, int length, Device dev, int base) {
+        mapRead(addr, length, dev, base);
         
-        if (addr >= 0xA000 && addr <= 0xBFFF) {
-            if ((portData & 0x01) == 0x00) { 
-                basicRom.write(addr - 0xA000, val);
-            }
-            
-            dram.write(addr, val);
+        for(int p = addr >>> 8; p < (addr + length) >>> 8; p++) {
+            writers[p] = dev;
+            writeMemories[p] = dev instanceof Memory mem ? mem : null;
+            writeBases[p] = base;
+        }
+    }
+    
+    private void mapRead(int addr, int length, Device dev, int base) {
+        for(int p = addr >>> 8; p < (addr + length) >>> 8; p++) {
+            readers[p] = dev;
+            readMemories[p] = dev instanceof Memory mem ? mem : null;
+            readBases[p] = base;
+            timed[p] = dev == vic || dev == sid || dev == cia1 || dev == cia2;
         }
+    }
+    
+    @Override
+    public Memory memoryAt(int addr) {
+        addr &= 0xFFFF;
+        if(addr < 2) return null;
+        
+        var mem = readMemories[addr >>> 8];
+        
+        return mem != null || addr >= 0x100 ? mem : dram;
+    }
+    
+    @Override
+    public int memoryOffset(int addr) {
+        addr &= 0xFFFF;
+        
+        return addr - readBases[addr >>> 8];
+    }
+    
+    @Override
+    public boolean isROM(int addr) {
+        Memory mem = memoryAt(addr);
+        
+        return mem == kernalRom || mem == basicRom || mem == charRom;
+    }
+    
+    @Override
+    public void registerBankSwitchListener(BankSwitchListener bsl) {
+        bsls.add(bsl);
+    }
     
-        // low RAM ($0000 - $9FFF)
-        dram.write(addr, val);
+    @Override
+    public void unregisterBankSwitchListener(BankSwitchListener bsl) {
+        bsls.remove(bsl);
     }
     
+    /**
+     * Pulls NMI low: the CPU takes it after the instruction in progress.
+     */
     public void nmi() {
-        cpu.nmi();
+        nmi = true;
+        if(cpu != null) cpu.stopRun();
     }
     
+    /**
+     * Tells that a chip pulled IRQ low: the CPU takes it after the 
+     * instruction in progress, or as soon as I is clear, for as long as
+     * {@link #isIRQ()}.
+     */
     public void irq() {
-        cpu.irq();
+        if(cpu != null) cpu.stopRun();
+    }
+    
+    /**
+     * @return whether a chip holds IRQ low
+     */
+    boolean isIRQ() {
+        return cia1.isInterrupting();
+    }
+    
+    /**
+     * @return whether NMI fell since the last call
+     */
+    boolean takeNMI() {
+        if(!nmi) return false;
+        
+        nmi = false;
+        return true;
     }
 
     @Override
@@ -131,26 +342,4 @@ public class C64Bus implements Bus {
             new Memory.MemoryRecord(cia2.getRegisters(), "CIA 2")
         };
     }
-    
-    private int readIO(int addr) {
-        if(addr <= 0xD3FF) return vic .read(addr - 0xD000);
-        if(addr <= 0xD7FF) return sid .read(addr - 0xD400);
-        if(addr <= 0xDBFF) return cram.read(addr - 0xD800);
-        if(addr <= 0xDCFF) return cia1.read(addr - 0xDC00);
-        if(addr <= 0xDDFF) return cia2.read(addr - 0xDD00);
-        // I/O expansions. We leave them unsupported and fall back to 0xFF for now.
-        if(addr <= 0xDFFF) return 0xFF; 
-        
-        return 0xFF;
-    }
-    
-    private void writeIO(int addr, int val) {
-        if(addr <= 0xD3FF) vic .write(addr - 0xD000, val);
-        if(addr <= 0xD7FF) sid .write(addr - 0xD400, val);
-        if(addr <= 0xDBFF) cram.write(addr - 0xD800, val);
-        if(addr <= 0xDCFF) cia1.write(addr - 0xDC00, val);
-        if(addr <= 0xDDFF) cia2.write(addr - 0xDD00, val);
-        // I/O expansions. We leave them unsupported and fall back to 0xFF for now.
-        if(addr <= 0xDFFF);
-    }
 }
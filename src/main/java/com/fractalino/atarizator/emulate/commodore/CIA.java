@@ -9,8 +9,20 @@ package com.fractalino.atarizator.emulate.commodore;
 
 import com.fractalino.atarizator.emulate.Device;
 import com.fractalino.atarizator.emulate.Memory8;
+import com.fractalino.atarizator.emulate.Scheduler;
 
 /**
+ * A 6526 Complex Interface Adapter.
+ *
+ * Timers A and B don't count cycle by cycle: each keeps its counter as of
+ * the cycle the CIA was last synchronized to, and {@link #sync(long)} 
+ * works out the underflows since then, and where the counters are, by 
+ * division. The only event scheduled is the next underflow that sets a 
+ * bit of ICR, masked or not, as a program may poll it. If the source is 
+ * enabled, it raises an interrupt, IRQ for CIA 1 and NMI for CIA 2, which
+ * reaches the CPU after the instruction running at that cycle. The start
+ * and load delays of the chip, the TOD clock and the serial port are not
+ * emulated.
  *
  * @author fractalino
  */
@@ -38,9 +50,29 @@ public class CIA implements Device {
     public static final int INPUT = 0x0;
     public static final int OUTPUT = 0x1;
     
+    // CRA and CRB
+    private static final int START   = 0x01;
+    private static final int RUNMODE = 0x08; // one-shot
+    private static final int LOAD    = 0x10;
+    
+    // ICR
+    private static final int TA = 0x01;
+    private static final int TB = 0x02;
+    private static final int IR = 0x80;
+    
     private final Memory8 registers = new Memory8(16);
     private final int[] outLatch = new int[2];
     
+    private final Timer timerA = new Timer();
+    private final Timer timerB = new Timer();
+    /** Interrupt sources that occurred since ICR was read, and IR. */
+    private int icr = 0;
+    /** CPU cycle the timers were last synchronized to. */
+    private long synced = 0;
+    
+    private Scheduler scheduler = null;
+    private int slot;
+    
     private final C64Bus bus;
     private final KeyboardMatrix kb;
     
@@ -95,6 +127,32 @@ public class CIA implements Device {
                 registers.read(addr);
             }
             
+            case TALO -> {
+                return timerA.counter & 0xFF;
+            }
+            
+            case TAHI -> {
+                return timerA.counter >>> 8;
+            }
+            
+            case TBLO -> {
+                return timerB.counter & 0xFF;
+            }
+            
+            case TBHI -> {
+                return timerB.counter >>> 8;
+            }
+            
+            case ICR -> {
+                int v = icr;
+                
+                // reading acknowledges the interrupt
+                icr = 0;
+                schedule();
+                
+                return v;
+            }
+            
             default -> {
                 return registers.read(addr);
             }
@@ -103,6 +161,11 @@ public class CIA implements Device {
         return 0xFF;
     }
     
+    @Override
+    public int peek(int addr) {
+        return addr == ICR ? icr : read(addr);
+    }
+    
     @Override
     public void write(int addr, int v) {
         v &= 0xFF; // Sanity check
@@ -118,6 +181,44 @@ public class CIA implements Device {
                 registers.write(addr, v);
             }
 
+            case TALO, TBLO -> {
+                var t = addr == TALO ? timerA : timerB;
+                t.latch = t.latch & 0xFF00 | v;
+                
+                registers.write(addr, v);
+                schedule();
+            }
+            
+            case TAHI, TBHI -> {
+                var t = addr == TAHI ? timerA : timerB;
+                t.latch = v << 8 | t.latch & 0xFF;
+                
+                // a stopped timer loads the latch at once
+                if(!t.started) t.counter = t.latch;
+                
+                registers.write(addr, v);
+                schedule();
+            }
+            
+            case CRA, CRB -> {
+                var t = addr == CRA ? timerA : timerB;
+                t.started = (v & START) != 0;
+                t.oneShot = (v & RUNMODE) != 0;
+                // CNT is pulled up on the C64: a timer counting it stands still
+                t.source = addr == CRA
+                        ? (v & 0x20) == 0 ? Timer.PHI2 : Timer.CNT
+                        : switch(v >>> 5 & 3) {
+                            case 0  -> Timer.PHI2;
+                            case 1  -> Timer.CNT;
+                            default -> Timer.TIMER_A;
+                        };
+                if((v & LOAD) != 0) t.counter = t.latch;
+                
+                // LOAD is a strobe
+                registers.write(addr, v & ~LOAD);
+                schedule();
+            }
+
             case ICR -> {
                 // $0D
                 boolean set = (v & 0x80) != 0;
@@ -127,13 +228,103 @@ public class CIA implements Device {
                 
                 registers.write(ICR, currentMask);
                 
-                // checkInterrupts(); // TODO
+                checkInterrupts();
+                schedule();
             }
             
             default -> registers.write(addr, v);
         }
     }
     
+    /**
+     * Counts down the timers to cycle, in one step.
+     * 
+     * @param cycle 
+     */
+    @Override
+    public void sync(long cycle) {
+        if(cycle <= synced) return;
+        
+        long elapsed = cycle - synced;
+        synced = cycle;
+        
+        long underflowsA = timerA.source == Timer.PHI2 
+                ? timerA.count(elapsed) 
+                : timerA.count(0);
+        long underflowsB = switch(timerB.source) {
+            case Timer.PHI2    -> timerB.count(elapsed);
+            case Timer.TIMER_A -> timerB.count(underflowsA);
+            default            -> timerB.count(0);
+        };
+        
+        if(underflowsA > 0) underflow(TA, CRA, timerA);
+        if(underflowsB > 0) underflow(TB, CRB, timerB);
+        
+        checkInterrupts();
+    }
+    
+    private void underflow(int source, int cr, Timer t) {
+        icr |= source;
+        
+        // a one-shot timer stops, and so does its START bit
+        if(!t.started) registers.write(cr, registers.read(cr) & ~START);
+    }
+    
+    /** Raises the interrupt if an enabled source occurred. */
+    private void checkInterrupts() {
+        if((icr & IR) != 0 || (icr & registers.read(ICR) & 0x1F) == 0) return;
+        
+        icr |= IR;
+        
+        if(id == CIAID.CIA1) bus.irq();
+        else bus.nmi();
+    }
+    
+    /**
+     * @return whether the interrupt output is held low, until ICR is read
+     */
+    boolean isInterrupting() {
+        return (icr & IR) != 0;
+    }
+    
+    @Override
+    public void setScheduler(Scheduler scheduler) {
+        this.scheduler = scheduler;
+        this.slot = scheduler.register(this::onUnderflow);
+    }
+    
+    /** The scheduled underflow of a source whose bit was clear. */
+    private void onUnderflow(long cycle) {
+        sync(cycle);
+        schedule();
+    }
+    
+    /**
+     * Schedules the next underflow of a running timer whose bit of ICR is 
+     * clear, whether it is enabled or not. Once set, a bit stays until 
+     * ICR is read, so the next underflows can wait until then.
+     */
+    private void schedule() {
+        if(scheduler == null) return;
+        
+        long next = Scheduler.NEVER;
+        
+        if((icr & TA) == 0) next = timerA.underflow(1);
+        if((icr & TB) == 0) {
+            next = Math.min(next, switch(timerB.source) {
+                case Timer.PHI2    -> timerB.underflow(1);
+                case Timer.TIMER_A -> timerB.running()
+                        ? timerA.underflow(timerB.counter + 1)
+                        : Scheduler.NEVER;
+                default            -> Scheduler.NEVER;
+            });
+        }
+        
+        scheduler.schedule(slot, next == Scheduler.NEVER 
+                ? next 
+                : synced + next);
+    }
+    
     @Override
     public void tick() {
         
@@ -144,4 +335,60 @@ public class CIA implements Device {
     }
     
     enum CIAID { CIA1, CIA2 }
+    
+    /**
+     * A 16-bit timer, counting down from its latch.
+     */
+    private static final class Timer {
+        static final int PHI2 = 0;
+        static final int CNT = 1;
+        static final int TIMER_A = 2;
+        
+        int latch = 0xFFFF;
+        int counter = 0xFFFF;
+        boolean started = false;
+        boolean oneShot = false;
+        /** What it counts. */
+        int source = PHI2;
+        
+        /**
+         * Counts ticks, if started.
+         * 
+         * @param ticks
+         * @return the underflows
+         */
+        long count(long ticks) {
+            if(!started || ticks <= counter) {
+                if(started) counter -= (int) ticks;
+                return 0;
+            }
+            
+            // it reloads from the latch, or stops if one-shot
+            ticks -= counter + 1;
+            if(oneShot) {
+                counter = latch;
+                started = false;
+                return 1;
+            }
+            
+            counter = latch - (int) (ticks % (latch + 1));
+            
+            return 1 + ticks / (latch + 1);
+        }
+        
+        boolean running() {
+            return started && source != CNT;
+        }
+        
+        /**
+         * @param n
+         * @return the ticks to its nth underflow from now, 
+         *         {@link Scheduler#NEVER} if it doesn't come
+         */
+        long underflow(long n) {
+            if(!running() || oneShot && n > 1) return Scheduler.NEVER;
+            
+            return counter + 1 + (n - 1) * (latch + 1);
+        }
+    }
 }
@@ -25,11 +25,26 @@ public class TestBus implements Bus {
         return mem.read(addr);
     }
 
+    @Override
+    public void peekRange(int addr, byte[] dst, int offset, int length) {
+        mem.peekRange(addr & 0xFFFF, dst, offset, length);
+    }
+
     @Override
     public void write(int addr, int val) {
         mem.write(addr, val);
     }
 
+    @Override
+    public Memory memoryAt(int addr) {
+        return mem;
+    }
+
+    @Override
+    public int memoryOffset(int addr) {
+        return addr & 0xFFFF;
+    }
+
     @Override
     public Memory.MemoryRecord[] enumMemory() {
         return new Memory.MemoryRecord[]{ 
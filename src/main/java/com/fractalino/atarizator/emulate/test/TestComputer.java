@@ -9,7 +9,8 @@ package com.fractalino.atarizator.emulate.test;
 
 import com.fractalino.atarizator.emulate.Computer;
 import com.fractalino.atarizator.emulate.MOS6502;
-import com.fractalino.atarizator.emulate.Memory8;
+
+import java.lang.foreign.MemorySegment;
 
 /**
  *
@@ -17,26 +18,34 @@ import com.fractalino.atarizator.emulate.Memory8;
  */
 public class TestComputer extends Computer<TestBus, MOS6502<TestBus>> {
     
-    public TestComputer() {
-        this(new TestBus());
+    public TestComputer(MOS6502.Feature... features) {
+        this(new TestBus(), features);
     }
     
-    TestComputer(TestBus bus) {
-        super(bus, new MOS6502<>(bus));
+    TestComputer(TestBus bus, MOS6502.Feature... features) {
+        super(bus, new MOS6502<>(bus, features));
     }
 
     @Override
     public void step() {
-        cpu.step();
+        masterCycle += cpu.step();
+    }
+
+    @Override
+    public long runCycles(long budget) {
+        long cycles = cpu.runCycles(budget);
+        masterCycle += cycles;
+        
+        return cycles;
     }
 
     @Override
     public void loadROM(byte[] rom) {
-        System.arraycopy(
-                rom, 0, 
-                ((Memory8) bus.enumMemory()[0].mem()).getMemory(), 0, 
-                65505
-        );
+        var mem = bus.enumMemory()[0].mem();
+        
+        mem.load(0, MemorySegment.ofArray(rom)
+                .asSlice(0, Math.min(rom.length, mem.getCapacity())));
+        compileROM(rom);
     }
     
 }
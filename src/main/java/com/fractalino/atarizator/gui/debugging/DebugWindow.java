@@ -8,14 +8,14 @@
 package com.fractalino.atarizator.gui.debugging;
 
 import com.fractalino.atarizator.emulate.Computer;
-import com.fractalino.atarizator.emulate.Memory;
 import com.fractalino.atarizator.emulate.atari.test.Tests;
 import com.fractalino.atarizator.emulate.test.TestComputer;
 
-import java.awt.Component;
+import java.awt.EventQueue;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 
 import java.nio.file.Files;
 
@@ -27,6 +27,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * Memories and state of a computer run by an {@link EmulationThread}. The
+ * window only sends it commands and shows its snapshots, polled 
+ * {@link EmulationThread#REFRESH_RATE} times per second.
  *
  * @author fractalino
  */
@@ -34,44 +37,79 @@ public class DebugWindow extends javax.swing.JFrame {
     
     private static final Logger LOGGER = LoggerFactory.getLogger(DebugWindow.class);
 
-    private Computer computer;
+    private final EmulationThread emulation;
     
-    private final Timer runStepsTimer;
+    private final Timer refreshTimer;
+    
+    /** The last snapshot shown, null if none. */
+    private EmulationThread.Snapshot shown = null;
     
     public DebugWindow(Computer computer) {
-        this.computer = computer;
+        emulation = new EmulationThread(computer, (ex) -> 
+                EventQueue.invokeLater(() -> showError(ex))
+        );
         
         initComponents();
         postInitComponents();
         
-        runStepsTimer = new Timer(50, (e) -> {
-            step();
-
-            for(Component c : tabbedPane.getComponents()) {
-                if(c instanceof MemoryViewPanel mvp) {
-                    mvp.getMemoryTableModel().fireTableDataChanged();
-                }
-            }
-            
-            if(computer.getCPU().getProgramCounter() == 0x3469) {
-                System.out.println("success");
-            }
+        refreshTimer = new Timer(1000 / EmulationThread.REFRESH_RATE, (e) -> {
+            var snapshot = emulation.poll();
+            if(snapshot != null) show(snapshot);
         });
+        refreshTimer.start();
+        
+        emulation.start();
     }
     
-    private void resetTabs() {
-        tabbedPane.removeAll();
+    private void show(EmulationThread.Snapshot snapshot) {
+        if(shown == null || shown.loads() != snapshot.loads()) {
+            // the cartridge brings its own memories
+            tabbedPane.removeAll();
+            for(var image : snapshot.memories())
+                tabbedPane.addTab(image.name(), new MemoryViewPanel(image.data()));
+        } else {
+            // dirty pages of skipped snapshots are unknown
+            boolean next = snapshot.sequence() == shown.sequence() + 1;
+            
+            for(int i = 0; i < snapshot.memories().size(); i++) {
+                var image = snapshot.memories().get(i);
+                
+                if(tabbedPane.getComponentAt(i) instanceof MemoryViewPanel mvp) {
+                    mvp.update(image.data(), next ? image.dirty() : null);
+                }
+            }
+        }
+        
+        opCode.setText(String.format("%02x", snapshot.opcode()));
+        jButton2.setText(snapshot.running() ? "Pause" : "Run Steps");
+        
+        // the success trap of the 6502 functional test
+        if(snapshot.pc() == 0x3469 && (shown == null || shown.pc() != 0x3469)) {
+            LOGGER.info("Functional test passed at cycle {}", snapshot.cycle());
+        }
+        
+        shown = snapshot;
     }
     
-    private void updateTabs() {
-        for(Memory.MemoryRecord memr : computer.getBus().enumMemory())
-            tabbedPane.addTab(memr.name(), new MemoryViewPanel(memr.mem()));
+    private void showError(RuntimeException ex) {
+        JOptionPane.showMessageDialog(
+                this, 
+                ex, 
+                "Error", 
+                JOptionPane.ERROR_MESSAGE
+        );
     }
     
     private void postInitComponents() {
         fileChooser = new JFileChooser((File) null);
         
-        updateTabs();
+        addWindowListener(new java.awt.event.WindowAdapter() {
+            @Override
+            public void windowClosed(java.awt.event.WindowEvent e) {
+                refreshTimer.stop();
+                emulation.close();
+            }
+        });
     }
     
     @SuppressWarnings("unchecked")
@@ -173,58 +211,28 @@ public class DebugWindow extends javax.swing.JFrame {
             File file = fileChooser.getSelectedFile();
             
             try {
-                byte[] data = Files.readAllBytes(file.toPath());
-                
-                computer.loadROM(data);
-                
-                for(Component c : tabbedPane.getComponents()) {
-                    if(c instanceof MemoryViewPanel mvp) {
-                        mvp.getMemoryTableModel().fireTableDataChanged();
-                    }
-                }
+                emulation.send(new EmulationThread.Load(
+                        Files.readAllBytes(file.toPath())
+                ));
             } catch (IOException ex) {
-                JOptionPane.showMessageDialog(
-                        this, 
-                        ex, 
-                        "Error", 
-                        JOptionPane.ERROR_MESSAGE
-                );
+                showError(new UncheckedIOException(ex));
             }
         }
     }//GEN-LAST:event_openMenuItemActionPerformed
 
     private void jButton1ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jButton1ActionPerformed
-        step();
+        emulation.send(new EmulationThread.Step(1));
     }//GEN-LAST:event_jButton1ActionPerformed
 
     private void jMenuItem1ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jMenuItem1ActionPerformed
-        computer.loadROM(Tests.generateTestRom());
-        
-        for(Component c : tabbedPane.getComponents()) {
-            if(c instanceof MemoryViewPanel mvp) {
-                mvp.update(0, 0);
-            }
-        }
+        emulation.send(new EmulationThread.Load(Tests.generateTestRom()));
     }//GEN-LAST:event_jMenuItem1ActionPerformed
 
     private void jButton2ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jButton2ActionPerformed
-        if(runStepsTimer.isRunning()) runStepsTimer.stop();
-        else runStepsTimer.start();
+        if(shown != null && shown.running()) emulation.send(new EmulationThread.Pause());
+        else emulation.send(new EmulationThread.Run());
     }//GEN-LAST:event_jButton2ActionPerformed
 
-    private void step() {
-        computer.step();
-        opCode.setText(String.format(
-                "%02x", 
-                computer.getCPU().currentOpcode()
-        ));
-        for(Component c : tabbedPane.getComponents()) {
-            if(c instanceof MemoryViewPanel mvp) {
-                mvp.update(0, 0);
-            }
-        }
-    }
-    
     public static void init() {
         java.awt.EventQueue.invokeLater(() -> {
             new DebugWindow(new TestComputer()).setVisible(true);
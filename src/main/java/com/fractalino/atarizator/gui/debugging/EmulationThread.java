@@ -0,0 +1,237 @@
+/*
+ *  Copyright (c) 2025/2026, fractalino
+ *
+ *  This file is part of Atarizator.
+ *  It is subject to the terms of the GNU General Public License v3.
+ *  For details, see the LICENSE file at the root of the project.
+ */
+package com.fractalino.atarizator.gui.debugging;
+
+import com.fractalino.atarizator.emulate.Computer;
+import com.fractalino.atarizator.emulate.Memory;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs a computer on its own thread, away from the Event Dispatch Thread.
+ *
+ * Nothing but this thread touches the computer. Other threads send it
+ * {@link Command}s through a lock-free queue, and read what it did from
+ * immutable {@link Snapshot}s: while running, one is published every
+ * 1/{@link #REFRESH_RATE} s, and after each command once paused. Only the
+ * latest snapshot is kept, so a slow reader skips some instead of slowing
+ * the emulation down.
+ *
+ * @author fractalino
+ */
+public final class EmulationThread {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EmulationThread.class);
+
+    /** Snapshots per second while running. */
+    public static final int REFRESH_RATE = 30;
+
+    private static final long REFRESH_PERIOD = 1_000_000_000L / REFRESH_RATE;
+
+    /** Cycles run between checks of the queue and of the time. */
+    private static final long BATCH = 10_000;
+
+    /**
+     * A request to the emulation thread.
+     */
+    public sealed interface Command {}
+
+    /** Runs count instructions, then pauses. */
+    public record Step(int count) implements Command {}
+
+    /** Runs until paused. */
+    public record Run() implements Command {}
+
+    public record Pause() implements Command {}
+
+    /** Loads a ROM; the memories of the machine may change. */
+    public record Load(byte[] rom) implements Command {}
+
+    private record Quit() implements Command {}
+
+    /**
+     * The state of the computer at some cycle. The arrays are never written
+     * once published.
+     *
+     * @param sequence   numbers the snapshots, from 0
+     * @param loads      ROMs loaded so far: memories are the same as in a
+     *                   snapshot with the same count
+     * @param cycle      master cycle
+     * @param pc
+     * @param opcode     opcode of the last instruction run
+     * @param running
+     * @param memories
+     */
+    public record Snapshot(long sequence, int loads, long cycle, int pc,
+            int opcode, boolean running, List<MemoryImage> memories) {
+    }
+
+    /**
+     * A copy of a memory.
+     *
+     * @param name
+     * @param data
+     * @param dirty pages of {@link Memory#PAGE_SIZE} bytes written since
+     *              the previous snapshot
+     */
+    public record MemoryImage(String name, byte[] data, BitSet dirty) {
+    }
+
+    private final Computer<?, ?> computer;
+    private final Consumer<RuntimeException> onError;
+    private final Thread thread;
+
+    private final Queue<Command> commands = new ConcurrentLinkedQueue<>();
+    private final AtomicReference<Snapshot> latest = new AtomicReference<>();
+
+    // owned by the emulation thread
+    private boolean running = false;
+    private long sequence = 0;
+    private int loads = 0;
+
+    /**
+     * @param computer no longer to be used by the caller
+     * @param onError  told, on the emulation thread, of the ROMs that
+     *                 couldn't be loaded and of the errors that paused the
+     *                 emulation
+     */
+    public EmulationThread(Computer<?, ?> computer,
+            Consumer<RuntimeException> onError) {
+        this.computer = computer;
+        this.onError = onError;
+
+        this.thread = Thread.ofPlatform()
+                .name("Emulation")
+                .daemon()
+                .unstarted(this::loop);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * Queues command; never blocks.
+     *
+     * @param command
+     */
+    public void send(Command command) {
+        commands.add(command);
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Stops the thread once the commands sent before are done.
+     */
+    public void close() {
+        send(new Quit());
+    }
+
+    /**
+     * @return the snapshot published since the last call, null if none
+     */
+    public Snapshot poll() {
+        return latest.getAndSet(null);
+    }
+
+    private void loop() {
+        publish();
+
+        long next = System.nanoTime() + REFRESH_PERIOD;
+        while(true) {
+            Command c;
+            boolean changed = false;
+            while((c = commands.poll()) != null) {
+                if(c instanceof Quit) return;
+
+                execute(c);
+                changed = true;
+            }
+
+            if(!running) {
+                if(changed) publish();
+
+                LockSupport.park(this);
+                next = System.nanoTime() + REFRESH_PERIOD;
+                continue;
+            }
+
+            try {
+                // stopped advancing: jammed
+                if(computer.runCycles(BATCH) == 0) running = false;
+            } catch(RuntimeException ex) {
+                running = false;
+                error(ex);
+            }
+
+            long now = System.nanoTime();
+            if(now >= next || !running) {
+                publish();
+                next = now + REFRESH_PERIOD;
+            }
+        }
+    }
+
+    private void execute(Command c) {
+        try {
+            switch(c) {
+                case Step s -> {
+                    running = false;
+                    for(int i = 0; i < s.count(); i++) computer.step();
+                }
+                case Run r   -> running = true;
+                case Pause p -> running = false;
+                case Load l  -> {
+                    computer.loadROM(l.rom());
+                    loads++;
+                }
+                case Quit q  -> {}
+            }
+        } catch(RuntimeException ex) {
+            running = false;
+            error(ex);
+        }
+    }
+
+    private void error(RuntimeException ex) {
+        LOGGER.warn("Emulation paused: {}", ex.toString());
+        onError.accept(ex);
+    }
+
+    /**
+     * Copies the state of the computer and replaces the latest snapshot
+     * with it. Takes the dirty pages of its memories.
+     */
+    private void publish() {
+        var records = computer.getBus().enumMemory();
+        var images = new ArrayList<MemoryImage>(records.length);
+
+        for(Memory.MemoryRecord r : records) {
+            var mem = r.mem();
+            byte[] data = new byte[mem.getCapacity()];
+            mem.peekRange(0, data, 0, data.length);
+
+            images.add(new MemoryImage(r.name(), data, mem.takeDirtyPages()));
+        }
+
+        var cpu = computer.getCPU();
+        latest.set(new Snapshot(sequence++, loads,
+                computer.getMasterCycle(), cpu.getProgramCounter(),
+                cpu.currentOpcode(), running, List.copyOf(images)));
+    }
+}
@@ -9,6 +9,8 @@ package com.fractalino.atarizator.gui.debugging;
 
 import com.fractalino.atarizator.emulate.Memory;
 
+import java.util.BitSet;
+
 import javax.swing.table.AbstractTableModel;
 
 /**
@@ -17,20 +19,21 @@ import javax.swing.table.AbstractTableModel;
  */
 public class MemoryTableModel extends AbstractTableModel{
     
-    private Memory mem;
+    /** Copy of the memory, from an {@link EmulationThread.Snapshot}. */
+    private byte[] data;
     
     private int cols;
     
     private Mode viewMode = Mode.HEX;
     
-    public MemoryTableModel(Memory mem, int cols) {
-        this.mem = mem;
+    public MemoryTableModel(byte[] data, int cols) {
+        this.data = data;
         this.cols = cols;
     }
 
     @Override
     public int getRowCount() {
-        return mem.getCapacity() / cols;
+        return data.length / cols;
     }
 
     @Override
@@ -49,7 +52,7 @@ public class MemoryTableModel extends AbstractTableModel{
             return String.format("%04x", rowIndex * cols);
         }
         
-        int value = mem.read(rowIndex * cols + columnIndex - 1);
+        int value = data[rowIndex * cols + columnIndex - 1] & 0xFF;
         
         switch(viewMode) {
             case OCT: return String.format("%04o", value);
@@ -60,6 +63,31 @@ public class MemoryTableModel extends AbstractTableModel{
         return null;
     }
     
+    /**
+     * Shows a newer copy of the memory, of the same size.
+     * 
+     * @param data
+     * @param pages the pages of {@link Memory#PAGE_SIZE} bytes that changed, 
+     *              null if unknown
+     */
+    public void setData(byte[] data, BitSet pages) {
+        this.data = data;
+        
+        if(pages == null) {
+            fireTableDataChanged();
+            return;
+        }
+        
+        int rows = getRowCount();
+        for(int p = pages.nextSetBit(0); p >= 0; p = pages.nextSetBit(p + 1)) {
+            int first = p * Memory.PAGE_SIZE / cols;
+            if(first >= rows) break;
+            
+            fireTableRowsUpdated(first, 
+                    Math.min(((p + 1) * Memory.PAGE_SIZE - 1) / cols, rows - 1));
+        }
+    }
+    
     public void setViewMode(Mode viewMode) {
         if(this.viewMode != viewMode) {
             this.viewMode = viewMode;
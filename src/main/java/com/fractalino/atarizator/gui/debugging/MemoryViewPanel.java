@@ -7,7 +7,7 @@
  */
 package com.fractalino.atarizator.gui.debugging;
 
-import com.fractalino.atarizator.emulate.Memory;
+import java.util.BitSet;
 
 /**
  *
@@ -15,26 +15,31 @@ import com.fractalino.atarizator.emulate.Memory;
  */
 public class MemoryViewPanel extends javax.swing.JPanel {
 
-    private final Memory mem;
+    private final byte[] initial;
     
     private MemoryTableModel model = null;
     
-    public MemoryViewPanel(Memory mem) {
-        this.mem = mem;
+    public MemoryViewPanel(byte[] data) {
+        this.initial = data;
         
         initComponents();
     }
     
     public MemoryTableModel getMemoryTableModel() {
         if(model == null) {
-            model = new MemoryTableModel(mem, 8);
+            model = new MemoryTableModel(initial, 8);
         }
         
         return model;
     }
     
-    public void update(int x, int y) {
-        model.fireTableDataChanged(); // to change with a more robust single cell update.
+    /**
+     * @param data a newer copy of the memory
+     * @param pages the pages that changed, null if unknown
+     * @see MemoryTableModel#setData(byte[], BitSet) 
+     */
+    public void update(byte[] data, BitSet pages) {
+        getMemoryTableModel().setData(data, pages);
     }
 
     @SuppressWarnings("unchecked")
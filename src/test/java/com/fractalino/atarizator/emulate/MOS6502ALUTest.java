@@ -0,0 +1,131 @@
+/*
+ *  Copyright (c) 2025/2026, fractalino
+ *
+ *  This file is part of Atarizator.
+ *  It is subject to the terms of the GNU General Public License v3.
+ *  For details, see the LICENSE file at the root of the project.
+ */
+package com.fractalino.atarizator.emulate;
+
+import com.fractalino.atarizator.emulate.test.TestBus;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * {@link MOS6502.Feature#ALU_TABLES} against the computed ADC, SBC and ARR
+ * of the interpreter, for every accumulator, operand, carry and decimal
+ * flag.
+ *
+ * @author fractalino
+ */
+class MOS6502ALUTest {
+
+    private static final int START = 0x0400;
+    private static final int RESULT = 0x10;
+    private static final int OPERAND = 0x20;
+
+    /** Opcodes taking an immediate, or the operand at {@link #OPERAND}. */
+    private static final int[][] OPS = {
+        {0x69, -1},         // ADC #
+        {0xE9, -1},         // SBC #
+        {0xEB, -1},         // SBC # (illegal)
+        {0x6B, -1},         // ARR #
+        {0x65, OPERAND},    // ADC zp
+        {0xE5, OPERAND},    // SBC zp
+        {0x67, OPERAND},    // RRA zp
+        {0xE7, OPERAND}     // ISC zp
+    };
+
+    /** Every combination of C and D, with the other flags set or not. */
+    private static final int[] STATUS = {0x00, 0x01, 0x08, 0x09, 0xF6, 0xFF};
+
+    @Test
+    void tablesMatchComputedResults() {
+        check(false, MOS6502.Feature.ALU_TABLES);
+    }
+
+    @Test
+    void tablesMatchComputedResultsWithLazyFlags() {
+        check(false, MOS6502.Feature.ALU_TABLES, MOS6502.Feature.LAZY_FLAGS);
+    }
+
+    /** ASL A can leave A above 255, where the tables don't apply. */
+    @Test
+    void accumulatorOutOfRangeFallsBack() {
+        check(true, MOS6502.Feature.ALU_TABLES);
+    }
+
+    private static void check(boolean shifted, MOS6502.Feature... features) {
+        var computed = new Machine();
+        var tables = new Machine(features);
+
+        for(int[] op : OPS) {
+            for(int s : STATUS) {
+                for(int a = 0; a < 0x100; a++) {
+                    for(int m = 0; m < 0x100; m++) {
+                        long expected = computed.run(op, s, a, m, shifted);
+                        long actual = tables.run(op, s, a, m, shifted);
+                        if(expected == actual) continue;
+
+                        assertEquals(Machine.toString(expected),
+                                Machine.toString(actual), String.format(
+                                        "op %02X, S %02X, A %02X, operand %02X%s",
+                                        op[0], s, a, m, shifted ? ", ASL A" : ""));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * A CPU running LDA #a, [ASL A], then the operation with status s,
+     * then STA {@link #RESULT}.
+     */
+    private static final class Machine {
+        private final TestBus bus = new TestBus();
+        private final MOS6502<TestBus> cpu;
+
+        Machine(MOS6502.Feature... features) {
+            cpu = new MOS6502<>(bus, features);
+
+            bus.write(0xFFFC, START & 0xFF);
+            bus.write(0xFFFD, START >>> 8);
+        }
+
+        /**
+         * @return the result, the status after the operation, the operand
+         *         after it, the cycles and the PC, packed
+         */
+        long run(int[] op, int s, int a, int m, boolean shifted) {
+            int pc = START;
+            bus.write(pc++, 0xA9);
+            bus.write(pc++, a);
+            if(shifted) bus.write(pc++, 0x0A);
+            bus.write(pc++, op[0]);
+            bus.write(pc++, op[1] < 0 ? m : op[1]);
+            bus.write(pc++, 0x85);
+            bus.write(pc++, RESULT);
+            bus.write(OPERAND, m);
+
+            cpu.reset();
+            cpu.step();
+            if(shifted) cpu.step();
+            cpu.setFlags((byte) s);
+
+            int cycles = cpu.step();
+            int status = cpu.getStatus();
+            cycles += cpu.step();
+
+            return (long) cpu.getProgramCounter() << 32 | cycles << 24
+                    | bus.read(OPERAND) << 16 | status << 8 | bus.read(RESULT);
+        }
+
+        static String toString(long r) {
+            return String.format("A %02X, S %02X, M %02X, %d cycles, PC %04X",
+                    r & 0xFF, r >>> 8 & 0xFF, r >>> 16 & 0xFF, r >>> 24 & 0xFF,
+                    r >>> 32);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ *  Copyright (c) 2025/2026, fractalino
+ *
+ *  This file is part of Atarizator.
+ *  It is subject to the terms of the GNU General Public License v3.
+ *  For details, see the LICENSE file at the root of the project.
+ */
+package com.fractalino.atarizator.emulate;
+
+import com.fractalino.atarizator.emulate.test.TestBus;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * {@link MOS6502.Feature#LAZY_FLAGS} against the eager interpreter, on
+ * random instruction streams.
+ *
+ * Both CPUs trace every instruction: the registers, status and cycle
+ * before an instruction are those after the previous one.
+ *
+ * @author fractalino
+ */
+class MOS6502LazyFlagsTest {
+
+    private static final int SEEDS = 64;
+    private static final int STEPS = 10_000;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void lazyFlagsMatchEagerFlags() throws IOException {
+        for(int seed = 0; seed < SEEDS; seed++) {
+            byte[] memory = program(seed);
+
+            Path eager = run(memory, dir.resolve("eager"));
+            Path lazy = run(memory, dir.resolve("lazy"),
+                    MOS6502.Feature.LAZY_FLAGS);
+
+            compare(seed, eager, lazy);
+        }
+    }
+
+    /**
+     * @return 64 KB of random bytes, without the opcodes that jam the CPU
+     */
+    private static byte[] program(int seed) {
+        byte[] memory = new byte[0x10000];
+        new Random(seed).nextBytes(memory);
+
+        for(int i = 0; i < memory.length; i++) {
+            if((memory[i] & 0x0F) == 0x02 && memory[i] != (byte) 0xA2) {
+                memory[i] = (byte) 0xEA;
+            }
+        }
+        return memory;
+    }
+
+    private static Path run(byte[] memory, Path file,
+            MOS6502.Feature... features) throws IOException {
+        var bus = new TestBus();
+        var cpu = new MOS6502<>(bus, features);
+        for(int i = 0; i < memory.length; i++) bus.write(i, memory[i]);
+
+        try(var trace = new TraceBuffer(STEPS, false)) {
+            cpu.setTrace(trace, true);
+            cpu.reset();
+            for(int i = 0; i < STEPS; i++) cpu.step();
+
+            trace.flush(file);
+        }
+        return file;
+    }
+
+    private static void compare(int seed, Path expected, Path actual)
+            throws IOException {
+        try(var e = new DataInputStream(Files.newInputStream(expected));
+                var a = new DataInputStream(Files.newInputStream(actual))) {
+            // magic, version, first record
+            e.skipNBytes(16);
+            a.skipNBytes(16);
+
+            int n = e.readInt();
+            assertEquals(n, a.readInt(), "seed " + seed + ": records");
+
+            for(int i = 0; i < n; i++) {
+                long er = e.readLong(), ec = e.readLong();
+                long ar = a.readLong(), ac = a.readLong();
+                if(er == ar && ec == ac) continue;
+
+                assertEquals(format(i, er, ec), format(i, ar, ac),
+                        "seed " + seed);
+            }
+        }
+    }
+
+    private static String format(long index, long record, long cycle) {
+        var sb = new StringBuilder();
+        TraceDecoder.format(sb, index, record, cycle);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ *  Copyright (c) 2025/2026, fractalino
+ *
+ *  This file is part of Atarizator.
+ *  It is subject to the terms of the GNU General Public License v3.
+ *  For details, see the LICENSE file at the root of the project.
+ */
+package com.fractalino.atarizator.emulate.atari;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The 6507 memory map of {@link Atari2600Bus}, at each of the 8192
+ * addresses and their mirrors up to $FFFF, against the address lines
+ * the chips decode.
+ *
+ * @author fractalino
+ */
+class Atari2600BusTest {
+
+    private enum Target { CARTRIDGE, TIA, RIOT_IO, RIOT_RAM }
+
+    private final byte[] rom = new byte[Atari2600Cartridge.WINDOW];
+    private Atari2600Bus bus;
+
+    /** The chip selected by addr, from the address lines the 6507 has. */
+    private static Target target(int addr) {
+        int a = addr & 0x1FFF;
+
+        if(a >= 0x1000) return Target.CARTRIDGE;
+        if((a & 0x0080) == 0) return Target.TIA;
+        if((a & 0x0200) != 0) return Target.RIOT_IO;
+        return Target.RIOT_RAM;
+    }
+
+    @BeforeEach
+    void insertCartridge() {
+        for(int i = 0; i < rom.length; i++) rom[i] = (byte) (i * 7 + (i >>> 8));
+
+        bus = new Atari2600Bus();
+        bus.setCartridge(rom.clone());
+
+        // TIM64T: the timer runs, far from its underflow
+        bus.write(0x0296, 0x80);
+    }
+
+    @Test
+    void everyAddressIsDecoded() {
+        var cartridge = bus.getCartridge();
+        var ram = bus.getRIOT().getMemory();
+
+        for(int addr = 0; addr < 0x10000; addr++) {
+            var at = String.format("$%04X", addr);
+
+            switch(target(addr)) {
+                case CARTRIDGE -> {
+                    assertSame(cartridge.memoryAt(addr), bus.memoryAt(addr), at);
+                    assertEquals(addr & 0x0FFF, bus.memoryOffset(addr), at);
+                    assertEquals(rom[addr & 0x0FFF] & 0xFF, bus.peek(addr), at);
+                    assertTrue(bus.isROM(addr), at);
+                    assertFalse(bus.isVolatile(addr), at);
+                }
+                case TIA -> {
+                    assertNull(bus.memoryAt(addr), at);
+                    assertFalse(bus.isROM(addr), at);
+                    assertTrue(bus.isVolatile(addr), at);
+                }
+                case RIOT_IO -> {
+                    assertNull(bus.memoryAt(addr), at);
+                    assertFalse(bus.isROM(addr), at);
+                    assertFalse(bus.isVolatile(addr), at);
+                    // INTIM is mirrored at every address with A2 set, A0 clear
+                    if((addr & 0x05) == 0x04) {
+                        assertEquals(bus.peek(0x0284), bus.peek(addr), at);
+                    }
+                }
+                case RIOT_RAM -> {
+                    assertSame(ram, bus.memoryAt(addr), at);
+                    assertEquals(addr & 0x7F, bus.memoryOffset(addr), at);
+                    assertFalse(bus.isROM(addr), at);
+                    assertFalse(bus.isVolatile(addr), at);
+                }
+            }
+        }
+    }
+
+    @Test
+    void ramIsMirrored() {
+        for(int addr = 0; addr < 0x10000; addr++) {
+            if(target(addr) != Target.RIOT_RAM) continue;
+
+            int v = (addr ^ addr >>> 8) & 0xFF;
+            bus.write(addr, v);
+
+            var at = String.format("$%04X", addr);
+            assertEquals(v, bus.read(0x0080 | addr & 0x7F), at);
+            assertEquals(v, bus.peek(addr), at);
+        }
+    }
+
+    @Test
+    void onlyRamIsWritten() {
+        for(int addr = 0x80; addr < 0x100; addr++) bus.write(addr, 0);
+
+        for(int addr = 0; addr < 0x10000; addr++) {
+            var target = target(addr);
+            if(target == Target.CARTRIDGE || target == Target.RIOT_IO) {
+                bus.write(addr, 0xFF);
+            }
+        }
+
+        for(int addr = 0x80; addr < 0x100; addr++) {
+            assertEquals(0, bus.peek(addr), String.format("$%04X", addr));
+        }
+        for(int addr = 0x1000; addr < 0x2000; addr++) {
+            assertEquals(rom[addr & 0x0FFF] & 0xFF, bus.peek(addr),
+                    String.format("$%04X", addr));
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ *  Copyright (c) 2025/2026, fractalino
+ *
+ *  This file is part of Atarizator.
+ *  It is subject to the terms of the GNU General Public License v3.
+ *  For details, see the LICENSE file at the root of the project.
+ */
+package com.fractalino.atarizator.emulate.atari;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * The bank switching schemes {@link Atari2600Cartridge#of(byte[])}
+ * detects, and the bank switches of each, through an Atari2600Bus.
+ *
+ * Every byte of the test images holds the number of its bank in the high
+ * nibble, so a read tells which bank is mapped there.
+ *
+ * @author fractalino
+ */
+class Atari2600CartridgeTest {
+
+    /**
+     * @return an image of size bytes, in banks of bankSize, matching no
+     *         signature
+     */
+    private static byte[] image(int size, int bankSize) {
+        var image = new byte[size];
+        for(int i = 0; i < size; i++) {
+            // the low nibble differs between 128-byte pages: no Superchip
+            image[i] = (byte) ((i / bankSize) << 4 | (i >>> 7) & 0xF);
+        }
+
+        return image;
+    }
+
+    /** Copies signature into every 4 KB bank, away from bank starts. */
+    private static byte[] sign(byte[] image, int... signature) {
+        for(int bank = 0; bank < image.length; bank += Atari2600Cartridge.WINDOW) {
+            for(int i = 0; i < signature.length; i++) {
+                image[bank + 0x300 + i] = (byte) signature[i];
+            }
+        }
+
+        return image;
+    }
+
+    private static Atari2600Bus insert(byte[] image) {
+        var bus = new Atari2600Bus();
+        bus.setCartridge(image);
+
+        return bus;
+    }
+
+    private static int bankAt(Atari2600Bus bus, int addr) {
+        return bus.read(addr) >>> 4;
+    }
+
+    @Test
+    void schemesAreDetected() {
+        assertEquals("2K", Atari2600Cartridge.of(image(0x800, 0x800)).getName());
+        assertEquals("4K", Atari2600Cartridge.of(image(0x1000, 0x1000)).getName());
+        assertEquals("F8", Atari2600Cartridge.of(image(0x2000, 0x1000)).getName());
+        assertEquals("F6", Atari2600Cartridge.of(image(0x4000, 0x1000)).getName());
+        assertEquals("F4", Atari2600Cartridge.of(image(0x8000, 0x1000)).getName());
+
+        // STA $1FE0, STA $3F twice, JSR $D000; DEC $C5 and LDA $1FE5
+        assertEquals("E0", Atari2600Cartridge.of(
+                sign(image(0x2000, 0x400), 0x8D, 0xE0, 0x1F)).getName());
+        assertEquals("3F", Atari2600Cartridge.of(
+                sign(image(0x2000, 0x800), 0x85, 0x3F)).getName());
+        assertEquals("FE", Atari2600Cartridge.of(
+                sign(image(0x2000, 0x1000), 0x20, 0x00, 0xD0, 0xC6, 0xC5)).getName());
+        assertEquals("E7", Atari2600Cartridge.of(
+                sign(image(0x4000, 0x800), 0xAD, 0xE5, 0x1F)).getName());
+
+        assertInstanceOf(CartridgeDPC.class,
+                Atari2600Cartridge.of(new byte[CartridgeDPC.SIZE]));
+    }
+
+    @Test
+    void superchipAndMirroredImagesAreDetected() {
+        // the RAM ports repeat in every bank
+        var sc = image(0x2000, 0x1000);
+        for(int bank = 0; bank < sc.length; bank += Atari2600Cartridge.WINDOW) {
+            System.arraycopy(sc, bank, sc, bank + 0x80, 0x80);
+        }
+        assertEquals("F8SC", Atari2600Cartridge.of(sc).getName());
+
+        // two copies of the same 4 KB
+        var mirrored = new byte[0x2000];
+        System.arraycopy(image(0x1000, 0x1000), 0, mirrored, 0, 0x1000);
+        System.arraycopy(mirrored, 0, mirrored, 0x1000, 0x1000);
+        assertEquals("4K", Atari2600Cartridge.of(mirrored).getName());
+    }
+
+    @Test
+    void unsupportedSizesThrow() {
+        assertThrows(IllegalArgumentException.class,
+                () -> Atari2600Cartridge.of(new byte[0x3000]));
+    }
+
+    @Test
+    void standardHotspotsSwitchTheWindow() {
+        int[] sizes = {0x2000, 0x4000, 0x8000};
+        int[] firsts = {0x1FF8, 0x1FF6, 0x1FF4};
+
+        for(int s = 0; s < sizes.length; s++) {
+            int banks = sizes[s] / Atari2600Cartridge.WINDOW;
+            var bus = insert(image(sizes[s], 0x1000));
+            var at = String.format("%d KB", sizes[s] >>> 10);
+
+            // the last bank at power on
+            assertEquals(banks - 1, bankAt(bus, 0x1000), at);
+
+            for(int b = 0; b < banks; b++) {
+                bus.read(firsts[s] + b);
+                assertEquals(b, bankAt(bus, 0x1000), at);
+                assertEquals(b, bankAt(bus, 0x1FFF), at);
+            }
+
+            // writes to hotspots switch too, here at a mirror of the window
+            bus.write(0xF000 | firsts[s], 0);
+            assertEquals(0, bankAt(bus, 0x1000), at);
+        }
+    }
+
+    @Test
+    void superchipRamIsWrittenAndReadAtSeparatePorts() {
+        var sc = image(0x2000, 0x1000);
+        for(int bank = 0; bank < sc.length; bank += Atari2600Cartridge.WINDOW) {
+            System.arraycopy(sc, bank, sc, bank + 0x80, 0x80);
+        }
+        var bus = insert(sc);
+
+        bus.write(0x1005, 0x42);
+        assertEquals(0x42, bus.read(0x1085));
+        bus.read(0x1FF8);
+        assertEquals(0x42, bus.read(0x1085));
+    }
+
+    @Test
+    void e0HotspotsSwitchEachSlice() {
+        var bus = insert(sign(image(0x2000, 0x400), 0x8D, 0xE0, 0x1F));
+
+        for(int slice = 0; slice < 3; slice++) {
+            assertEquals(4 + slice, bankAt(bus, 0x1000 + slice * 0x400));
+
+            for(int b = 0; b < 8; b++) {
+                bus.read(0x1FE0 + slice * 8 + b);
+                assertEquals(b, bankAt(bus, 0x1000 + slice * 0x400), "slice " + slice);
+            }
+        }
+
+        // the last slice always shows bank 7
+        assertEquals(7, bankAt(bus, 0x1C00));
+        assertEquals(7, bankAt(bus, 0x1FFF));
+    }
+
+    @Test
+    void e7MapsItsRamBanks() {
+        var bus = insert(sign(image(0x4000, 0x800), 0xAD, 0xE5, 0x1F));
+
+        for(int b = 0; b < 7; b++) {
+            bus.read(0x1FE0 + b);
+            assertEquals(b, bankAt(bus, 0x1000));
+        }
+
+        // $1FE7: 1 KB of RAM, written at $1000, read at $1400
+        bus.read(0x1FE7);
+        bus.write(0x1010, 0x42);
+        assertEquals(0x42, bus.read(0x1410));
+
+        // 4 pages of 256 bytes, written at $1800, read at $1900
+        for(int p = 0; p < 4; p++) {
+            bus.read(0x1FE8 + p);
+            bus.write(0x1810, 0x50 + p);
+        }
+        for(int p = 0; p < 4; p++) {
+            bus.read(0x1FE8 + p);
+            assertEquals(0x50 + p, bus.read(0x1910), "page " + p);
+        }
+
+        // the end of bank 7 is fixed
+        assertEquals(7, bankAt(bus, 0x1A00));
+        assertEquals(7, bankAt(bus, 0x1FFF));
+    }
+
+    @Test
+    void feBankFollowsA13() {
+        var bus = insert(sign(image(0x2000, 0x1000), 0x20, 0x00, 0xD0, 0xC6, 0xC5));
+
+        // code assembled at $F000 runs from bank 0, at $D000 from bank 1
+        assertEquals(0, bankAt(bus, 0xF000));
+        assertEquals(1, bankAt(bus, 0xD000));
+        assertEquals(0, bankAt(bus, 0xFFFF));
+        assertEquals(1, bankAt(bus, 0xDFFF));
+    }
+
+    @Test
+    void writesToTheTiaSwitch3FBanks() {
+        var bus = insert(sign(image(0x4000, 0x800), 0x85, 0x3F));
+
+        for(int b = 0; b < 8; b++) {
+            bus.write(0x3F, b);
+            assertEquals(b, bankAt(bus, 0x1000));
+            assertEquals(7, bankAt(bus, 0x1800));
+        }
+
+        // any TIA address below $40, the bank number modulo the banks
+        bus.write(0x00, 10);
+        assertEquals(2, bankAt(bus, 0x1000));
+
+        // not above
+        bus.write(0x40, 5);
+        assertEquals(2, bankAt(bus, 0x1000));
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ *  Copyright (c) 2025/2026, fractalino
+ *
+ *  This file is part of Atarizator.
+ *  It is subject to the terms of the GNU General Public License v3.
+ *  For details, see the LICENSE file at the root of the project.
+ */
+package com.fractalino.atarizator.emulate.atari;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The interval timer of {@link Atari2600RIOT}, cycle by cycle after a
+ * write, as Stella counts it. The tests sync the RIOT directly: on the
+ * bus it is synchronized to instruction starts, so these cycles are the
+ * starts of the instructions that write and read it.
+ *
+ * @author fractalino
+ */
+class Atari2600RIOTTest {
+
+    private static final int INTIM  = 0x284;
+    private static final int TIMINT = 0x285;
+    private static final int TIM8T  = 0x295;
+
+    private static final long WRITTEN = 100;
+
+    @Test
+    void intimDecrementsFromTheCycleAfterTheWrite() {
+        var riot = new Atari2600RIOT();
+        riot.sync(WRITTEN);
+        riot.writeIO(TIM8T, 3);
+
+        // 3 on the cycle of the write, then 2, 1 and 0 for 8 cycles each
+        assertEquals(3, peekAt(riot, WRITTEN));
+        for(int d = 1; d <= 24; d++) {
+            assertEquals(3 - (d + 7) / 8, peekAt(riot, WRITTEN + d), "+" + d);
+        }
+        assertEquals(WRITTEN + 25, riot.expiry());
+
+        // then 1 per cycle from $FF
+        assertEquals(0xFF, peekAt(riot, WRITTEN + 25));
+        assertEquals(0xFE, peekAt(riot, WRITTEN + 26));
+    }
+
+    @Test
+    void flagIsSetAtTheUnderflow() {
+        var riot = new Atari2600RIOT();
+        riot.sync(WRITTEN);
+        riot.writeIO(TIM8T, 3);
+
+        riot.sync(WRITTEN + 24);
+        assertEquals(0, riot.peekIO(TIMINT));
+
+        riot.sync(WRITTEN + 25);
+        assertEquals(0x80, riot.peekIO(TIMINT));
+
+        // reading INTIM clears it
+        riot.readIO(INTIM);
+        assertEquals(0, riot.peekIO(TIMINT));
+    }
+
+    @Test
+    void zeroUnderflowsOnTheNextCycle() {
+        var riot = new Atari2600RIOT();
+        riot.sync(WRITTEN);
+        riot.writeIO(TIM8T, 0);
+
+        assertEquals(0, peekAt(riot, WRITTEN));
+        assertEquals(0xFF, peekAt(riot, WRITTEN + 1));
+    }
+
+    private static int peekAt(Atari2600RIOT riot, long cycle) {
+        riot.sync(cycle);
+        return riot.peekIO(INTIM);
+    }
+}
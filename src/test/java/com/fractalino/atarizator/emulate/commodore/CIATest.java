@@ -0,0 +1,211 @@
+/*
+ *  Copyright (c) 2025/2026, fractalino
+ *
+ *  This file is part of Atarizator.
+ *  It is subject to the terms of the GNU General Public License v3.
+ *  For details, see the LICENSE file at the root of the project.
+ */
+package com.fractalino.atarizator.emulate.commodore;
+
+import com.fractalino.atarizator.emulate.MOS6502;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The timers and interrupts of {@link CIA}, on a C64Bus whose clock is
+ * set by the test, and the masked IRQ of a running {@link C64}.
+ *
+ * @author fractalino
+ */
+class CIATest {
+
+    private static final int CIA1 = 0xDC00;
+    private static final int CIA2 = 0xDD00;
+
+    // CRA and CRB
+    private static final int CONTINUOUS = 0x11; // START | LOAD
+    private static final int ONE_SHOT   = 0x19; // START | RUNMODE | LOAD
+
+    private static final int LATCH = 10;
+    private static final long STARTED = 100;
+
+    private C64Bus bus;
+    private long now;
+
+    @BeforeEach
+    void newBus() {
+        bus = new C64Bus();
+        bus.setClock(() -> now);
+        now = 0;
+    }
+
+    /** Starts timer A (0) or B (1) of the CIA at base, at STARTED. */
+    private void start(int base, int timer, int control) {
+        now = STARTED;
+        bus.write(base + CIA.TALO + 2 * timer, LATCH);
+        bus.write(base + CIA.TAHI + 2 * timer, 0);
+        bus.write(base + CIA.CRA + timer, control);
+    }
+
+    /** @return the cycle of the nth underflow of a started timer */
+    private static long underflow(int n) {
+        return STARTED + n * (LATCH + 1);
+    }
+
+    private int readAt(long cycle, int addr) {
+        now = cycle;
+        return bus.read(addr);
+    }
+
+    @Test
+    void continuousTimersReloadFromTheLatch() {
+        for(int timer = 0; timer < 2; timer++) {
+            newBus();
+            start(CIA1, timer, CONTINUOUS);
+
+            int flag = 1 << timer;
+            int counter = CIA1 + CIA.TALO + 2 * timer;
+            assertEquals(LATCH - 3, readAt(STARTED + 3, counter));
+            for(int n = 1; n <= 3; n++) {
+                var at = "timer " + timer + ", underflow " + n;
+                assertEquals(0, readAt(underflow(n) - 1, CIA1 + CIA.ICR), at);
+                assertEquals(flag, readAt(underflow(n), CIA1 + CIA.ICR), at);
+            }
+        }
+    }
+
+    @Test
+    void oneShotTimersStopAtTheUnderflow() {
+        for(int timer = 0; timer < 2; timer++) {
+            newBus();
+            start(CIA1, timer, ONE_SHOT);
+
+            int flag = 1 << timer;
+            assertEquals(0, readAt(underflow(1) - 1, CIA1 + CIA.ICR), "timer " + timer);
+            assertEquals(flag, readAt(underflow(1), CIA1 + CIA.ICR), "timer " + timer);
+
+            // START is cleared and the counter holds the latch
+            assertEquals(0, readAt(underflow(5), CIA1 + CIA.ICR), "timer " + timer);
+            assertEquals(0, bus.read(CIA1 + CIA.CRA + timer) & 0x01);
+            assertEquals(LATCH, bus.read(CIA1 + CIA.TALO + 2 * timer));
+        }
+    }
+
+    @Test
+    void readingIcrAcknowledgesTheInterrupt() {
+        bus.write(CIA1 + CIA.ICR, 0x81);
+        start(CIA1, 0, CONTINUOUS);
+
+        readAt(underflow(1) - 1, CIA1 + CIA.TALO);
+        assertFalse(bus.isIRQ());
+        readAt(underflow(1), CIA1 + CIA.TALO);
+        assertTrue(bus.isIRQ());
+
+        assertEquals(0x81, bus.read(CIA1 + CIA.ICR));
+        assertFalse(bus.isIRQ());
+        assertEquals(0, bus.read(CIA1 + CIA.ICR));
+    }
+
+    @Test
+    void cia1RaisesIrqAndCia2Nmi() {
+        bus.write(CIA1 + CIA.ICR, 0x81);
+        start(CIA1, 0, CONTINUOUS);
+        readAt(underflow(1), CIA1 + CIA.TALO);
+
+        assertTrue(bus.isIRQ());
+        assertFalse(bus.takeNMI());
+
+        newBus();
+        bus.write(CIA2 + CIA.ICR, 0x81);
+        start(CIA2, 0, CONTINUOUS);
+        readAt(underflow(1), CIA2 + CIA.TALO);
+
+        assertFalse(bus.isIRQ());
+        assertTrue(bus.takeNMI());
+        assertFalse(bus.takeNMI());
+    }
+
+    @Test
+    void unmaskingRaisesAPendingUnderflow() {
+        start(CIA1, 0, CONTINUOUS);
+
+        readAt(underflow(1) + 3, CIA1 + CIA.TALO);
+        assertFalse(bus.isIRQ());
+        assertEquals(0x01, bus.peek(CIA1 + CIA.ICR));
+
+        now = underflow(1) + 5;
+        bus.write(CIA1 + CIA.ICR, 0x81);
+        assertTrue(bus.isIRQ());
+        assertEquals(0x81, bus.read(CIA1 + CIA.ICR));
+    }
+
+    /**
+     * A timer underflows while I is set: the IRQ waits for the CLI and is
+     * taken right after it, even with features that run several
+     * instructions at once.
+     */
+    @Test
+    void maskedIrqIsTakenAfterCli() {
+        MOS6502.Feature[][] featureSets = {
+            {},
+            {MOS6502.Feature.RECOMPILER},
+            {MOS6502.Feature.FUSION, MOS6502.Feature.TABLE_DISPATCH},
+            {MOS6502.Feature.RECOMPILER, MOS6502.Feature.IDLE_LOOPS}
+        };
+
+        for(var features : featureSets) {
+            var c64 = new C64(features);
+            var mem = c64.getBus();
+            mem.write(0x01, 0x35); // RAM at $E000 for the vectors, I/O at $D000
+
+            // $1000: SEI, 40 x INC $22, CLI, 20 x INC $21, JMP *
+            int pc = 0x1000;
+            mem.write(pc++, 0x78);
+            for(int i = 0; i < 40; i++) {
+                mem.write(pc++, 0xE6);
+                mem.write(pc++, 0x22);
+            }
+            mem.write(pc++, 0x58);
+            for(int i = 0; i < 20; i++) {
+                mem.write(pc++, 0xE6);
+                mem.write(pc++, 0x21);
+            }
+            mem.write(pc, 0x4C);
+            mem.write(pc + 1, pc & 0xFF);
+            mem.write(pc + 2, pc >>> 8);
+
+            // $2000: copies $22 to $31 and $21 to $30, INC $10, reads ICR
+            int[] handler = {
+                0xA5, 0x22, 0x85, 0x31, 0xA5, 0x21, 0x85, 0x30,
+                0xE6, 0x10, 0xAD, 0x0D, 0xDC, 0x40
+            };
+            for(int i = 0; i < handler.length; i++) mem.write(0x2000 + i, handler[i]);
+
+            mem.write(0xFFFC, 0x00);
+            mem.write(0xFFFD, 0x10);
+            mem.write(0xFFFE, 0x00);
+            mem.write(0xFFFF, 0x20);
+
+            // one underflow, 100 cycles in, long before the CLI
+            mem.write(CIA1 + CIA.TALO, 100);
+            mem.write(CIA1 + CIA.TAHI, 0);
+            mem.write(CIA1 + CIA.ICR, 0x81);
+            mem.write(CIA1 + CIA.CRA, ONE_SHOT);
+            c64.getCPU().reset();
+
+            c64.runCycles(2000);
+
+            var at = Arrays.toString(features);
+            assertEquals(1, mem.read(0x10), at);
+            assertEquals(40, mem.read(0x31), at);
+            assertEquals(0, mem.read(0x30), at);
+        }
+    }
+}